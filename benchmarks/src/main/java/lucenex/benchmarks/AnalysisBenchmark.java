@@ -0,0 +1,77 @@
+package lucenex.benchmarks;
+
+import lucenex.TextFileIndexer;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analisi di un campo con l'Analyzer usato da TextFileIndexer: EnglishAnalyzer per "contenuto"
+ * e il CustomAnalyzer che toglie l'estensione per "nome". Una operazione è l'analisi di un valore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysisBenchmark {
+    private static final int NUM_VALUES = 1000;
+
+    @Param({"contenuto", "nome"})
+    public String field;
+
+    private Analyzer analyzer;
+    private String[] values;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        analyzer = TextFileIndexer.createAnalyzer();
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        values = new String[NUM_VALUES];
+        for (int i = 0; i < NUM_VALUES; i++) {
+            values[i] = field.equals("nome") ? corpus.fileName(i) : corpus.text(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    /**
+     * @return il numero di caratteri dei token, per evitare che il lavoro venga eliminato dal JIT.
+     */
+    @Benchmark
+    public long analyze() throws IOException {
+        String value = values[next];
+        next = (next + 1) % values.length;
+        long chars = 0;
+        try (TokenStream ts = analyzer.tokenStream(field, value)) {
+            CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                chars += term.length();
+            }
+            ts.end();
+        }
+        return chars;
+    }
+}
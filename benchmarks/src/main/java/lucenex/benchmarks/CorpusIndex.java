@@ -0,0 +1,33 @@
+package lucenex.benchmarks;
+
+import lucenex.TextFileIndexer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+
+/**
+ * Indice in memoria del corpus sintetico, condiviso dai benchmark di ricerca.
+ */
+final class CorpusIndex {
+
+    private CorpusIndex() {
+    }
+
+    /**
+     * @return una directory in memoria con i primi numDocs documenti del corpus, uniti in un solo segmento
+     * per rendere le misure indipendenti dalle decisioni del merge.
+     */
+    static Directory build(SyntheticCorpus corpus, int numDocs) throws IOException {
+        Directory dir = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(TextFileIndexer.createAnalyzer()))) {
+            for (int i = 0; i < numDocs; i++) {
+                writer.addDocument(corpus.document(i));
+            }
+            writer.forceMerge(1);
+        }
+        return dir;
+    }
+}
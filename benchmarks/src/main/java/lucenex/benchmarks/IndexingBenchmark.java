@@ -0,0 +1,69 @@
+package lucenex.benchmarks;
+
+import lucenex.TextFileIndexer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput dell'indicizzazione, in documenti al secondo: ogni invocazione indicizza DOCS documenti
+ * del corpus sintetico in una directory in memoria, compresi flush e commit finale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexingBenchmark {
+    private static final int DOCS = 2000;
+
+    private SyntheticCorpus corpus;
+    // i testi sono generati prima, per non misurare il generatore
+    private String[] texts;
+    private String[] names;
+    private String[] paths;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        corpus = new SyntheticCorpus(42);
+        texts = new String[DOCS];
+        names = new String[DOCS];
+        paths = new String[DOCS];
+        for (int i = 0; i < DOCS; i++) {
+            texts[i] = corpus.text(i);
+            names[i] = corpus.fileName(i);
+            paths[i] = corpus.path(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public int indexDocuments() throws IOException {
+        ByteBuffersDirectory dir = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(TextFileIndexer.createAnalyzer()))) {
+            for (int i = 0; i < DOCS; i++) {
+                writer.addDocument(TextFileIndexer.createDocument(paths[i], names[i], new StringReader(texts[i]),
+                        i, texts[i].length(), Integer.toHexString(i)));
+            }
+            writer.commit();
+            return writer.getDocStats().numDocs;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package lucenex.benchmarks;
+
+import lucenex.TextFileIndexer;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.QueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latenza delle query sul campo "contenuto": term, phrase e boolean (tre termini in OR).
+ * Le query sono generate dal corpus con un seed fisso, quindi sono le stesse a ogni esecuzione.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int NUM_QUERIES = 100;
+
+    @Param({"20000"})
+    public int numDocs;
+
+    @Param({"term", "phrase", "boolean"})
+    public String queryType;
+
+    @Param({"10"})
+    public int topK;
+
+    private Directory dir;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private Query[] queries;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        dir = CorpusIndex.build(corpus, numDocs);
+        reader = DirectoryReader.open(dir);
+        searcher = new IndexSearcher(reader);
+
+        Analyzer analyzer = TextFileIndexer.createAnalyzer();
+        QueryBuilder builder = new QueryBuilder(analyzer);
+        Random random = corpus.random(Long.MAX_VALUE);
+        queries = new Query[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Query query;
+            if (queryType.equals("term")) {
+                query = builder.createBooleanQuery("contenuto", corpus.randomWord(random));
+            } else if (queryType.equals("phrase")) {
+                // due parole consecutive di un documento, così la frase compare almeno una volta
+                String[] words = corpus.text(random.nextInt(numDocs)).split("[ ,.]+");
+                int start = random.nextInt(words.length - 1);
+                query = builder.createPhraseQuery("contenuto", words[start] + " " + words[start + 1]);
+            } else if (queryType.equals("boolean")) {
+                query = builder.createBooleanQuery("contenuto", corpus.randomWord(random) + " "
+                        + corpus.randomWord(random) + " " + corpus.randomWord(random), BooleanClause.Occur.SHOULD);
+            } else {
+                throw new IllegalArgumentException("Tipo di query sconosciuto: " + queryType);
+            }
+            // le parole vuote per EnglishAnalyzer non producono query: si usa una parola rara
+            queries[i] = query != null ? query : builder.createBooleanQuery("contenuto", corpus.word(i + 1000));
+        }
+        analyzer.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    @Benchmark
+    public long search(Cursor cursor) throws IOException {
+        Query query = queries[cursor.next];
+        cursor.next = (cursor.next + 1) % queries.length;
+        return searcher.search(query, topK).totalHits.value;
+    }
+}
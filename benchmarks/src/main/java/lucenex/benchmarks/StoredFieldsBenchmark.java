@@ -0,0 +1,96 @@
+package lucenex.benchmarks;
+
+import lucenex.DocValuesFetcher;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo per leggere il path dei risultati di una query: dai campi memorizzati, come faceva SearchFile,
+ * e dai DocValues con lo stesso DocValuesFetcher di SearchService. I documenti sono scelti a caso con un seed fisso;
+ * i campi memorizzati vengono letti in ordine di docID, DocValuesFetcher riceve i risultati in ordine di score
+ * e li ordina per docID a ogni chiamata, come nella ricerca.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoredFieldsBenchmark {
+    private static final Set<String> PATH = Collections.singleton("path");
+    private static final DocValuesFetcher pathFetcher = new DocValuesFetcher("path");
+
+    @Param({"20000"})
+    public int numDocs;
+
+    @Param({"10", "100"})
+    public int hits;
+
+    private Directory dir;
+    private DirectoryReader reader;
+    private int[] docIds;
+    private ScoreDoc[] scoreDocs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        dir = CorpusIndex.build(corpus, numDocs);
+        reader = DirectoryReader.open(dir);
+        Random random = corpus.random(hits);
+        docIds = new int[hits];
+        for (int i = 0; i < hits; i++) {
+            docIds[i] = random.nextInt(numDocs);
+        }
+        // i risultati arrivano in ordine di score, non di docID
+        scoreDocs = new ScoreDoc[hits];
+        for (int i = 0; i < hits; i++) {
+            scoreDocs[i] = new ScoreDoc(docIds[i], hits - i);
+        }
+        Arrays.sort(docIds);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    @Benchmark
+    public long storedFields() throws IOException {
+        long length = 0;
+        for (int docId : docIds) {
+            length += reader.document(docId, PATH).get("path").length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public long docValues() throws IOException {
+        long length = 0;
+        for (String path : pathFetcher.fetch(reader, scoreDocs)) {
+            length += path.length();
+        }
+        return length;
+    }
+}
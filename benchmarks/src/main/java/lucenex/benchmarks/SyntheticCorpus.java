@@ -0,0 +1,154 @@
+package lucenex.benchmarks;
+
+import lucenex.TextFileIndexer;
+import org.apache.lucene.document.Document;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Genera un corpus sintetico deterministico: a parità di seed, il documento i è sempre lo stesso,
+ * indipendentemente dall'ordine in cui i documenti vengono generati.
+ * Le parole sono inventate combinando sillabe e la loro frequenza segue una legge di Zipf,
+ * così i termini hanno una distribuzione simile a quella di un testo reale.
+ */
+public class SyntheticCorpus {
+    private static final String[] SYLLABLES = {
+            "ba", "co", "de", "fi", "gu", "la", "me", "ni", "po", "ra", "si", "tu", "ve", "zo",
+            "ar", "en", "in", "on", "ur", "st", "tr", "pl", "qu", "ch"
+    };
+
+    private final long seed;
+    private final String[] words;
+    // cumulativeWeights[r] = somma dei pesi 1/(k+1) per k <= r
+    private final double[] cumulativeWeights;
+    private final int minWords;
+    private final int maxWords;
+
+    /**
+     * Corpus con 10000 parole e documenti da 50 a 1000 parole.
+     */
+    public SyntheticCorpus(long seed) {
+        this(seed, 10_000, 50, 1000);
+    }
+
+    /**
+     * @param seed           il seed da cui dipende tutto il corpus.
+     * @param vocabularySize numero di parole distinte.
+     * @param minWords       numero minimo di parole in un documento.
+     * @param maxWords       numero massimo di parole in un documento.
+     */
+    public SyntheticCorpus(long seed, int vocabularySize, int minWords, int maxWords) {
+        this.seed = seed;
+        this.minWords = minWords;
+        this.maxWords = maxWords;
+        Random random = new Random(seed);
+        words = new String[vocabularySize];
+        for (int i = 0; i < vocabularySize; i++) {
+            // il numero di riga rende le parole distinte anche se le sillabe estratte coincidono
+            StringBuilder sb = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            sb.append(SYLLABLES[i % SYLLABLES.length]).append(SYLLABLES[(i / SYLLABLES.length) % SYLLABLES.length]);
+            words[i] = sb.toString();
+        }
+        cumulativeWeights = new double[vocabularySize];
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            sum += 1.0 / (i + 1);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * @param rank la posizione della parola in ordine di frequenza, da 0.
+     * @return la parola.
+     */
+    public String word(int rank) {
+        return words[rank];
+    }
+
+    public int vocabularySize() {
+        return words.length;
+    }
+
+    /**
+     * @return una parola estratta con probabilità proporzionale a 1/(rank+1).
+     */
+    public String randomWord(Random random) {
+        double r = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int i = Arrays.binarySearch(cumulativeWeights, r);
+        return words[i < 0 ? -i - 1 : i];
+    }
+
+    /**
+     * @return un Random che dipende solo dal seed del corpus e da i.
+     */
+    public Random random(long i) {
+        return new Random(seed * 31 + i * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * @return il testo del documento i: frasi di parole separate da spazi e punteggiatura.
+     */
+    public String text(int i) {
+        Random random = random(i);
+        int length = minWords + random.nextInt(maxWords - minWords + 1);
+        StringBuilder sb = new StringBuilder(length * 8);
+        boolean startOfSentence = true;
+        for (int w = 0; w < length; w++) {
+            String word = randomWord(random);
+            if (startOfSentence) {
+                sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                startOfSentence = false;
+            } else {
+                sb.append(word);
+            }
+            if (random.nextInt(12) == 0) {
+                sb.append(". ");
+                startOfSentence = true;
+            } else if (random.nextInt(10) == 0) {
+                sb.append(", ");
+            } else {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return il nome del file del documento i, ad esempio "bacode_sitrst.txt".
+     */
+    public String fileName(int i) {
+        Random random = random(-1 - (long) i);
+        int parts = 1 + random.nextInt(3);
+        StringBuilder sb = new StringBuilder();
+        for (int p = 0; p < parts; p++) {
+            if (p > 0) {
+                sb.append(random.nextBoolean() ? '_' : '-');
+            }
+            sb.append(randomWord(random));
+        }
+        return sb.append(i).append(".txt").toString();
+    }
+
+    /**
+     * @return il percorso del file del documento i, distribuito su 100 cartelle.
+     */
+    public String path(int i) {
+        return "corpus/dir" + (i % 100) + "/" + fileName(i);
+    }
+
+    /**
+     * @return il documento i con gli stessi campi creati da TextFileIndexer.
+     */
+    public Document document(int i) {
+        String text = text(i);
+        return TextFileIndexer.createDocument(path(i), fileName(i), new StringReader(text), seed + i,
+                text.getBytes(StandardCharsets.UTF_8).length, Integer.toHexString(text.hashCode()));
+    }
+}
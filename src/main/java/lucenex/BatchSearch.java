@@ -0,0 +1,182 @@
+package lucenex;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Esegue in parallelo tutte le query di un file e scrive i risultati nel formato run di TREC:
+ * <pre>
+ * qid Q0 path rank score tag
+ * </pre>
+ * Il file delle query ha una query per riga, nella forma "qid&lt;TAB&gt;query" oppure solo "query"
+ * (in questo caso il qid è il numero di riga). Alla fine stampa throughput e latenze.
+ * Per default la cache dei risultati e il timeout sono disattivati, perché un run con risultati presi dalla cache
+ * o troncati non misura né la qualità né le latenze; se vengono riattivati con --cache-mb e --timeout,
+ * le query con risultati parziali sono segnalate su stderr e contate nel riepilogo.
+ * Sono disattivati anche il suggester, che il run non usa, e il registro delle query, perché le query di un run
+ * non devono finire tra quelle con cui vengono riscaldati i searcher delle ricerche interattive; si riattivano
+ * solo passando esplicitamente --suggest=true o --query-log=file.
+ *
+ * Uso: BatchSearch file-query [--out=run.txt] [--tag=lucenex] [--threads=N] [--k=1000] [--similarity=bm25] ...
+ */
+public class BatchSearch {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: BatchSearch file-query [--out=run.txt] [--tag=nome] [--threads=N] [--k=N]"
+                    + " [--similarity=bm25|classic|lm_jelinek_mercer] [--cache-mb=0] [--timeout=0]"
+                    + " [--suggest=false] [--query-log=]");
+            System.exit(-1);
+        }
+        String out = null;
+        String tag = "lucenex";
+        // i default di BatchSearch vengono prima degli argomenti, che quindi li sostituiscono
+        String[] defaults = {"--cache-mb=0", "--timeout=0", "--suggest=false", "--query-log="};
+        String[] rest = new String[defaults.length + args.length - 1];
+        System.arraycopy(defaults, 0, rest, 0, defaults.length);
+        int n = defaults.length;
+        // --out e --tag sono opzioni di BatchSearch, le altre vengono passate a SearchOptions
+        for (String arg : Arrays.copyOfRange(args, 1, args.length)) {
+            if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else if (arg.startsWith("--tag=")) {
+                tag = arg.substring("--tag=".length());
+            } else {
+                rest[n++] = arg;
+            }
+        }
+        SearchOptions options = SearchOptions.parse(Arrays.copyOf(rest, n));
+
+        Writer writer = out == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8);
+        try (SearchService service = new SearchService(options);
+             PrintWriter run = new PrintWriter(new BufferedWriter(writer))) {
+            Summary summary = run(service, args[0], options.getNumThreads(), tag, run);
+            run.flush();
+            System.err.println(summary);
+        }
+    }
+
+    /**
+     * Riepilogo di un'esecuzione.
+     */
+    static class Summary {
+        final long queries;
+        final long errors;
+        final long timeouts;
+        final long elapsedNanos;
+        final LatencyHistogram latency;
+
+        Summary(long queries, long errors, long timeouts, long elapsedNanos, LatencyHistogram latency) {
+            this.queries = queries;
+            this.errors = errors;
+            this.timeouts = timeouts;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        double queriesPerSecond() {
+            return elapsedNanos == 0 ? 0 : queries * 1_000_000_000d / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            String summary = String.format("%d query in %d ms (%.1f query/s), %d errori, %d timeout%nlatenza: %s",
+                    queries, elapsedNanos / 1_000_000, queriesPerSecond(), errors, timeouts, latency);
+            if (timeouts > 0) {
+                summary += String.format("%nattenzione: %d query hanno risultati parziali per timeout,"
+                        + " il run non è completo", timeouts);
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Esegue le query del file con numThreads thread che condividono lo stesso SearchService.
+     * Le righe del run vengono scritte appena ogni query termina, quindi non sono in ordine di qid.
+     */
+    static Summary run(SearchService service, String queryFile, int numThreads, String tag, PrintWriter run)
+            throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        // limita le query lette dal file e non ancora eseguite
+        Semaphore pending = new Semaphore(numThreads * 4);
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder queries = new LongAdder();
+        LongAdder errors = new LongAdder();
+        LongAdder timeouts = new LongAdder();
+
+        long startTime = System.nanoTime();
+        try (BufferedReader br = Files.newBufferedReader(Paths.get(queryFile), StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                String qid = tab < 0 ? String.valueOf(lineNumber) : line.substring(0, tab).trim();
+                String query = tab < 0 ? line : line.substring(tab + 1);
+
+                pending.acquire();
+                executor.execute(() -> {
+                    try {
+                        long queryStart = System.nanoTime();
+                        SearchResult result = service.search(query);
+                        latency.record(System.nanoTime() - queryStart);
+                        queries.increment();
+                        if (result.timedOut) {
+                            timeouts.increment();
+                            System.err.println("Risultati parziali per timeout nella query " + qid
+                                    + " (" + query + ")");
+                        }
+                        write(run, qid, result, tag);
+                    } catch (Exception e) {
+                        errors.increment();
+                        System.err.println("Errore nella query " + qid + " (" + query + "): " + e.getMessage());
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return new Summary(queries.sum(), errors.sum(), timeouts.sum(), System.nanoTime() - startTime, latency);
+    }
+
+    /**
+     * Scrive le righe del run di una query. Con un ordine diverso dallo score (vedi SearchOptions.setSort)
+     * lo score dei risultati è NaN, e trec_eval riordina le righe per score: si scrive quindi uno score
+     * che scende con il rank, così l'ordine del run resta quello della ricerca.
+     */
+    private static void write(PrintWriter run, String qid, SearchResult result, String tag) {
+        StringBuilder sb = new StringBuilder();
+        int k = result.hits.size();
+        int rank = 0;
+        for (SearchResult.Hit hit : result.hits) {
+            rank++;
+            // il formato TREC separa i campi con spazi, quindi non possono comparire nel path
+            sb.append(qid).append(" Q0 ").append(hit.path.replace(' ', '_').replace('\t', '_'))
+                    .append(' ').append(rank).append(' ').append(Float.isNaN(hit.score) ? k - rank + 1 : hit.score)
+                    .append(' ').append(tag).append('\n');
+        }
+        synchronized (run) {
+            run.print(sb);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package lucenex;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.misc.HighFreqTerms;
+import org.apache.lucene.misc.TermStats;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Funzioni di supporto per i report di prestazioni (CodecReport, SliceReport, ...).
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * @return una TermQuery per ciascuno dei termini più frequenti del campo.
+     */
+    static List<Query> highFreqTermQueries(IndexReader reader, String field, int numQueries) throws Exception {
+        List<Query> queries = new ArrayList<>();
+        for (TermStats stats : HighFreqTerms.getHighFreqTerms(reader, numQueries, field,
+                new HighFreqTerms.DocFreqComparator())) {
+            queries.add(new TermQuery(new Term(field, stats.termtext)));
+        }
+        return queries;
+    }
+
+    /**
+     * @param values i valori, non necessariamente ordinati.
+     * @param p      il percentile tra 0 e 1.
+     * @return il valore al percentile p.
+     */
+    static long percentile(long[] values, double p) {
+        if (values.length == 0) {
+            return 0;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * @return la dimensione totale dei file contenuti in dir.
+     */
+    static long sizeOf(Path dir) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    size += Files.size(file);
+                }
+            }
+        }
+        return size;
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            Path[] paths = files.toArray(Path[]::new);
+            for (int i = paths.length - 1; i >= 0; i--) {
+                Files.deleteIfExists(paths[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package lucenex;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene94.Lucene94Codec;
+import org.apache.lucene.codecs.simpletext.SimpleTextCodec;
+
+/**
+ * Il codec con cui viene scritto l'indice.
+ */
+public enum CodecMode {
+    /** Il codec binario di default di Lucene. */
+    DEFAULT {
+        @Override
+        public Codec newCodec() {
+            return Codec.getDefault();
+        }
+    },
+    /** Il codec di default con i campi memorizzati compressi al massimo: indice più piccolo, lettura dei documenti più lenta. */
+    BEST_COMPRESSION {
+        @Override
+        public Codec newCodec() {
+            return new Lucene94Codec(Lucene94Codec.Mode.BEST_COMPRESSION);
+        }
+    },
+    /** Formato testuale leggibile, utile solo per il debug. */
+    SIMPLE_TEXT {
+        @Override
+        public Codec newCodec() {
+            return new SimpleTextCodec();
+        }
+    };
+
+    public abstract Codec newCodec();
+
+    /**
+     * @param name il nome del codec, senza distinzione tra maiuscole e minuscole (es. "best_compression").
+     * @return il CodecMode corrispondente.
+     * @throws IllegalArgumentException se il nome non corrisponde a nessun codec.
+     */
+    public static CodecMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,95 @@
+package lucenex;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Confronta i codec disponibili indicizzando gli stessi file con ciascuno di essi.
+ * Per ogni codec riporta la dimensione dell'indice, il tempo di indicizzazione e la latenza delle query,
+ * misurata sui termini più frequenti del campo contenuto.
+ *
+ * Uso: CodecReport cartella-da-indicizzare [--workers=N ...]
+ */
+public class CodecReport {
+    private static final int NUM_QUERIES = 50;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: CodecReport cartella-da-indicizzare [--workers=N]");
+            System.exit(-1);
+        }
+        IndexerOptions base = IndexerOptions.parse(Arrays.copyOfRange(args, 1, args.length));
+
+        System.out.println(String.format("%-18s %14s %14s %14s %14s", "codec", "dimensione KB", "indicizz. ms",
+                "query p50 us", "query p99 us"));
+        for (CodecMode codec : CodecMode.values()) {
+            Path indexDir = Files.createTempDirectory("codec-" + codec.name().toLowerCase());
+            try {
+                IndexerOptions options = new IndexerOptions()
+                        .setIndexDir(indexDir.toString())
+                        .setNumWorkers(base.getNumWorkers())
+                        .setQueueCapacity(base.getQueueCapacity())
+                        .setCodec(codec);
+
+                long startTime = System.nanoTime();
+                TextFileIndexer indexer = new TextFileIndexer(options);
+                indexer.indexFileOrDirectory(args[0]);
+                indexer.closeIndex();
+                long indexingMillis = (System.nanoTime() - startTime) / 1000000;
+
+                long[] latencies = measureQueries(indexDir);
+                System.out.println(String.format("%-18s %14d %14d %14d %14d", codec,
+                        Benchmarks.sizeOf(indexDir) / 1024, indexingMillis,
+                        Benchmarks.percentile(latencies, 0.50), Benchmarks.percentile(latencies, 0.99)));
+            } finally {
+                Benchmarks.deleteRecursively(indexDir);
+            }
+        }
+    }
+
+    /**
+     * Esegue le query sui termini più frequenti e restituisce le latenze in microsecondi,
+     * comprensive del caricamento dei documenti trovati.
+     */
+    private static long[] measureQueries(Path indexDir) throws Exception {
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(indexDir))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            List<Query> queries = Benchmarks.highFreqTermQueries(reader, "contenuto", NUM_QUERIES);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                for (Query q : queries) {
+                    runQuery(searcher, q);
+                }
+            }
+            long[] latencies = new long[queries.size() * MEASURED_ROUNDS];
+            int n = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                for (Query q : queries) {
+                    long startTime = System.nanoTime();
+                    runQuery(searcher, q);
+                    latencies[n++] = (System.nanoTime() - startTime) / 1000;
+                }
+            }
+            return latencies;
+        }
+    }
+
+    private static void runQuery(IndexSearcher searcher, Query q) throws IOException {
+        TopDocs hits = searcher.search(q, 10);
+        for (ScoreDoc hit : hits.scoreDocs) {
+            searcher.doc(hit.doc).get("path");
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package lucenex;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * I contenuti identici indicizzati una volta sola per shard (vedi IndexerOptions.setDedup): il primo file con
+ * un certo hash viene indicizzato con il contenuto e la firma SimHash, gli altri come copie senza contenuto
+ * (vedi createCopy). Quando il file indicizzato con il contenuto viene rimosso o modificato, promoteCopies
+ * indicizza con il contenuto una delle copie rimaste. Usato da TextFileIndexer da più thread.
+ */
+final class ContentDedup {
+    /**
+     * Legge il testo estratto di un file, alimentando hasher con i byte letti.
+     */
+    interface TextSource {
+        Reader open(Path file, FileState.Hasher hasher) throws IOException;
+    }
+
+    /**
+     * Indicizza con il contenuto un file dello shard, sostituendo i suoi documenti.
+     */
+    interface ContentWriter {
+        void write(int shard, Path file, Fingerprint fingerprint) throws IOException;
+    }
+
+    /**
+     * L'hash dei byte di un file e la firma SimHash del suo testo.
+     */
+    static final class Fingerprint {
+        final String hash;
+        final long signature;
+
+        Fingerprint(String hash, long signature) {
+            this.hash = hash;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * I documenti di uno shard con un certo hash: se c'è un file indicizzato con il contenuto,
+     * altrimenti il path di una delle copie.
+     */
+    private static class FileCopies {
+        boolean indexed;
+        String copy;
+
+        static FileCopies find(IndexReader reader, String hash) throws IOException {
+            FileCopies result = new FileCopies();
+            Term hashTerm = new Term("hash", hash);
+            for (LeafReaderContext context : reader.leaves()) {
+                LeafReader leaf = context.reader();
+                Terms terms = leaf.terms("hash");
+                if (terms == null) {
+                    continue;
+                }
+                TermsEnum termsEnum = terms.iterator();
+                if (!termsEnum.seekExact(hashTerm.bytes())) {
+                    continue;
+                }
+                Bits liveDocs = leaf.getLiveDocs();
+                NumericDocValues duplicate = DocValues.getNumeric(leaf, TextFileIndexer.DUPLICATO);
+                SortedDocValues path = DocValues.getSorted(leaf, "path");
+                PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    if (!duplicate.advanceExact(doc)) {
+                        result.indexed = true;
+                        return result;
+                    }
+                    if (result.copy == null && path.advanceExact(doc)) {
+                        result.copy = path.lookupOrd(path.ordValue()).utf8ToString();
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private final IndexWriter[] writers;
+    private final TextSource text;
+    // gli hash dei contenuti già indicizzati in ogni shard
+    private final List<Set<String>> indexedHashes;
+
+    /**
+     * Legge dagli shard gli hash dei file indicizzati con il contenuto, per riconoscere i duplicati
+     * anche tra un'esecuzione e l'altra.
+     *
+     * @param writers gli IndexWriter degli shard.
+     * @param text    il testo dei file, come viene indicizzato.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    ContentDedup(IndexWriter[] writers, TextSource text) throws IOException {
+        this.writers = writers;
+        this.text = text;
+        this.indexedHashes = new ArrayList<>(writers.length);
+        for (IndexWriter writer : writers) {
+            indexedHashes.add(loadIndexedHashes(writer));
+        }
+    }
+
+    private static Set<String> loadIndexedHashes(IndexWriter writer) throws IOException {
+        Set<String> hashes = ConcurrentHashMap.newKeySet();
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            for (LeafReaderContext context : reader.leaves()) {
+                LeafReader leaf = context.reader();
+                Bits liveDocs = leaf.getLiveDocs();
+                BinaryDocValues hash = DocValues.getBinary(leaf, "hash");
+                NumericDocValues duplicate = DocValues.getNumeric(leaf, TextFileIndexer.DUPLICATO);
+                for (int doc = hash.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = hash.nextDoc()) {
+                    if ((liveDocs == null || liveDocs.get(doc)) && !duplicate.advanceExact(doc)) {
+                        hashes.add(hash.binaryValue().utf8ToString());
+                    }
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Legge un file una volta sola per calcolare sia l'hash dei byte, che decide se il contenuto è un duplicato,
+     * sia la firma SimHash del testo estratto, che va nel documento se il contenuto viene indicizzato.
+     *
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    Fingerprint fingerprint(Path file) throws IOException {
+        FileState.Hasher hasher = new FileState.Hasher();
+        SimHash simHash = new SimHash();
+        try (Reader reader = text.open(file, hasher)) {
+            char[] buffer = new char[8 * 1024];
+            for (int n = reader.read(buffer); n >= 0; n = reader.read(buffer)) {
+                simHash.add(buffer, 0, n);
+            }
+            return new Fingerprint(hasher.hash(), simHash.signature());
+        }
+    }
+
+    /**
+     * @return true se hash non era indicizzato nello shard: il file va indicizzato con il contenuto,
+     * e se non ci riesce va chiamato release.
+     */
+    boolean claim(int shard, String hash) {
+        return indexedHashes.get(shard).add(hash);
+    }
+
+    /**
+     * Dimentica un hash dello shard il cui contenuto non è stato indicizzato: il prossimo file con questo hash
+     * lo indicizzerà.
+     */
+    void release(int shard, String hash) {
+        indexedHashes.get(shard).remove(hash);
+    }
+
+    /**
+     * Aggiunge al documento di un file indicizzato con il contenuto la firma SimHash del testo.
+     */
+    static void addSignature(Document doc, long signature) {
+        doc.add(new NumericDocValuesField(TextFileIndexer.SIMHASH, signature));
+    }
+
+    /**
+     * Crea il documento di un file con lo stesso contenuto di un file già indicizzato: nome, path e stato
+     * del file, senza contenuto, così il file si trova per nome, viene aggiornato e rimosso come gli altri,
+     * e compare tra le copie dei risultati del file indicizzato con il contenuto.
+     */
+    static Document createCopy(String path, String nome, long mtime, long size, String hash) {
+        Document doc = new Document();
+        doc.add(new TextField("nome", nome, Field.Store.YES));
+        doc.add(new SortedDocValuesField("nome", new BytesRef(nome)));
+        TextFileIndexer.addFileFields(doc, path, mtime, size, hash);
+        doc.add(new NumericDocValuesField(TextFileIndexer.DUPLICATO, 1));
+        return doc;
+    }
+
+    /**
+     * Aggiunge a hashes gli hash dei file indicizzati con il contenuto trovati dalle query in tutti gli shard,
+     * prima di rimuoverli: il loro contenuto può servire alle copie.
+     *
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    void collectIndexedHashes(Collection<Query> queries, Set<String> hashes) throws IOException {
+        for (IndexWriter writer : writers) {
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                for (Query query : queries) {
+                    collectIndexedHashes(reader, query, hashes);
+                }
+            }
+        }
+    }
+
+    private static void collectIndexedHashes(IndexReader reader, Query query, Set<String> hashes)
+            throws IOException {
+        new IndexSearcher(reader).search(query, new SimpleCollector() {
+            private BinaryDocValues hash;
+            private NumericDocValues duplicate;
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                hash = DocValues.getBinary(context.reader(), "hash");
+                duplicate = DocValues.getNumeric(context.reader(), TextFileIndexer.DUPLICATO);
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (!duplicate.advanceExact(doc) && hash.advanceExact(doc)) {
+                    hashes.add(hash.binaryValue().utf8ToString());
+                }
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        });
+    }
+
+    /**
+     * Dopo la rimozione o la modifica di file indicizzati con il contenuto, indicizza con il contenuto una delle
+     * copie rimaste di ognuno, e dimentica gli hash che non hanno più file.
+     * Un errore su una copia viene segnalato e non ferma le altre.
+     *
+     * @param removedHashes gli hash dei file rimossi o modificati.
+     * @param writer        indicizza una copia con il contenuto.
+     * @return il numero di copie indicizzate con il contenuto.
+     * @throws IOException se non si possono leggere gli shard.
+     */
+    long promoteCopies(Set<String> removedHashes, ContentWriter writer) throws IOException {
+        if (removedHashes.isEmpty()) {
+            return 0;
+        }
+        long promoted = 0;
+        for (int shard = 0; shard < writers.length; shard++) {
+            List<Path> copies = new ArrayList<>();
+            try (DirectoryReader reader = DirectoryReader.open(writers[shard])) {
+                for (String hash : removedHashes) {
+                    if (!indexedHashes.get(shard).contains(hash)) {
+                        continue;
+                    }
+                    FileCopies found = FileCopies.find(reader, hash);
+                    if (found.indexed) {
+                        continue;
+                    }
+                    if (found.copy == null) {
+                        release(shard, hash);
+                    } else {
+                        copies.add(Paths.get(found.copy));
+                    }
+                }
+            }
+            for (Path copy : copies) {
+                String claimed = null;
+                try {
+                    Fingerprint fingerprint = fingerprint(copy);
+                    if (claim(shard, fingerprint.hash)) {
+                        claimed = fingerprint.hash;
+                    }
+                    writer.write(shard, copy, fingerprint);
+                    promoted++;
+                } catch (IOException | RuntimeException e) {
+                    // il prossimo file con questo hash indicizzerà il contenuto; la copia verrà rimossa
+                    // o aggiornata alla prossima visita, o al prossimo evento della cartella
+                    if (claimed != null) {
+                        release(shard, claimed);
+                    }
+                    System.out.println("Non può essere aggiunto: " + copy + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+        return promoted;
+    }
+}
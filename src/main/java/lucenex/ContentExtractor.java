@@ -0,0 +1,55 @@
+package lucenex;
+
+import org.apache.lucene.analysis.charfilter.HTMLStripCharFilter;
+
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estrae il testo da indicizzare dal contenuto di un file di un certo formato, mentre viene letto:
+ * il Reader restituito è di solito un CharFilter che toglie il markup senza costruire un DOM,
+ * e diventa il primo passo della catena di analisi del campo contenuto (gli offset dei termini
+ * vengono corretti dal CharFilter e si riferiscono al file originale).
+ * Gli estrattori vengono usati da più worker di indicizzazione contemporaneamente, quindi non devono avere stato.
+ */
+public interface ContentExtractor {
+    /** Testo semplice, indicizzato così com'è. */
+    ContentExtractor PLAIN = in -> in;
+
+    /** HTML e XML: toglie tag, commenti, script e stili, e decodifica le entità. */
+    ContentExtractor MARKUP = HTMLStripCharFilter::new;
+
+    /** Markdown: toglie l'HTML eventualmente presente e gli indirizzi di link e immagini. */
+    ContentExtractor MARKDOWN = in -> new MarkdownCharFilter(new HTMLStripCharFilter(in));
+
+    /**
+     * @param in il contenuto del file, già decodificato.
+     * @return il testo da indicizzare, letto in streaming da in; chiuderlo chiude anche in.
+     */
+    Reader extract(Reader in);
+
+    /**
+     * @return gli estrattori predefiniti per estensione (in minuscolo, senza punto).
+     */
+    static Map<String, ContentExtractor> defaults() {
+        Map<String, ContentExtractor> extractors = new LinkedHashMap<>();
+        extractors.put("txt", PLAIN);
+        extractors.put("html", MARKUP);
+        extractors.put("htm", MARKUP);
+        extractors.put("xhtml", MARKUP);
+        extractors.put("xml", MARKUP);
+        extractors.put("md", MARKDOWN);
+        extractors.put("markdown", MARKDOWN);
+        return extractors;
+    }
+
+    /**
+     * @param file il nome del file.
+     * @return l'estensione del file in minuscolo, senza punto, oppure "" se il file non ha estensione.
+     */
+    static String extension(String file) {
+        int dot = file.lastIndexOf('.');
+        return dot < 0 ? "" : file.substring(dot + 1).toLowerCase();
+    }
+}
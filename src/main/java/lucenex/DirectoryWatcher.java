@@ -0,0 +1,138 @@
+package lucenex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Osserva alcune cartelle, comprese le sottocartelle, e restituisce le modifiche a gruppi.
+ * Gli eventi dello stesso path vengono uniti: conta solo l'ultimo, quindi un file creato, modificato
+ * più volte e poi cancellato risulta solo cancellato.
+ */
+class DirectoryWatcher implements Closeable {
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final long debounceNanos;
+    private final long maxDelayNanos;
+
+    /**
+     * Modifiche raccolte in un gruppo.
+     */
+    static class Batch {
+        /** File o cartelle creati o modificati. */
+        final Set<Path> changed = new LinkedHashSet<>();
+        /** File o cartelle cancellati. */
+        final Set<Path> deleted = new LinkedHashSet<>();
+        /** true se il sistema operativo ha perso degli eventi: le cartelle vanno visitate di nuovo. */
+        boolean overflow;
+
+        boolean isEmpty() {
+            return changed.isEmpty() && deleted.isEmpty() && !overflow;
+        }
+    }
+
+    /**
+     * @param roots          le cartelle da osservare.
+     * @param debounceMillis un gruppo si chiude quando per debounceMillis non arrivano altri eventi,
+     *                       e comunque dopo 10 volte debounceMillis dal primo evento.
+     * @throws IOException se le cartelle non possono essere osservate.
+     */
+    DirectoryWatcher(List<Path> roots, long debounceMillis) throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        maxDelayNanos = debounceNanos * 10;
+        for (Path root : roots) {
+            registerAll(root);
+        }
+    }
+
+    // WatchService non osserva le sottocartelle, ognuna va registrata
+    private void registerAll(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // cartella cancellata o non leggibile nel frattempo
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Attende il prossimo gruppo di modifiche.
+     *
+     * @return le modifiche, unite per path.
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa.
+     * @throws IOException          se una nuova cartella non può essere osservata.
+     */
+    Batch next() throws InterruptedException, IOException {
+        Batch batch = new Batch();
+        WatchKey key = watchService.take();
+        long firstEvent = System.nanoTime();
+        while (key != null) {
+            process(key, batch);
+            long wait = Math.min(debounceNanos, firstEvent + maxDelayNanos - System.nanoTime());
+            key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : null;
+        }
+        return batch;
+    }
+
+    private void process(WatchKey key, Batch batch) throws IOException {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                batch.overflow = true;
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_DELETE) {
+                batch.changed.remove(path);
+                batch.deleted.add(path);
+            } else {
+                batch.deleted.remove(path);
+                batch.changed.add(path);
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    // i file creati prima della registrazione vengono trovati visitando la cartella
+                    registerAll(path);
+                }
+            }
+        }
+        if (!key.reset()) {
+            // la cartella non esiste più
+            directories.remove(key);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,72 @@
+package lucenex;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Legge il valore di un campo per un insieme di risultati dai SortedDocValues, senza caricare i campi memorizzati.
+ * I risultati vengono visitati in ordine di docID, così ogni segmento viene letto una sola volta
+ * e in avanti, invece di decomprimere un blocco di campi memorizzati per ogni risultato.
+ */
+public class DocValuesFetcher {
+    private final String field;
+
+    /**
+     * @param field il campo, indicizzato anche come SortedDocValuesField.
+     */
+    public DocValuesFetcher(String field) {
+        this.field = field;
+    }
+
+    /**
+     * @param reader il reader su cui sono stati trovati i risultati.
+     * @param hits   i risultati, in qualsiasi ordine.
+     * @return il valore del campo per ogni risultato, nello stesso ordine di hits.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    public String[] fetch(IndexReader reader, ScoreDoc[] hits) throws IOException {
+        String[] values = new String[hits.length];
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(hits[a].doc, hits[b].doc));
+
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = null;
+        SortedDocValues docValues = null;
+        for (int i : order) {
+            int doc = hits[i].doc;
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                docValues = hasDocValues(leaf) ? DocValues.getSorted(leaf.reader(), field) : null;
+            }
+            int leafDoc = doc - leaf.docBase;
+            if (docValues != null) {
+                if (docValues.advanceExact(leafDoc)) {
+                    values[i] = docValues.lookupOrd(docValues.ordValue()).utf8ToString();
+                }
+            } else {
+                // segmenti scritti prima che il campo avesse i DocValues
+                values[i] = leaf.reader().document(leafDoc, Collections.singleton(field)).get(field);
+            }
+        }
+        return values;
+    }
+
+    private boolean hasDocValues(LeafReaderContext leaf) {
+        FieldInfo info = leaf.reader().getFieldInfos().fieldInfo(field);
+        return info != null && info.getDocValuesType() == DocValuesType.SORTED;
+    }
+}
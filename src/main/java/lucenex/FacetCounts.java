@@ -0,0 +1,235 @@
+package lucenex;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Conteggi dei risultati di una ricerca per cartella e per estensione, calcolati nella stessa raccolta del top-k
+ * dai SortedSetDocValues scritti da TextFileIndexer: per ogni segmento si contano gli ordinali dei documenti trovati,
+ * e solo alla fine del segmento gli ordinali contati vengono convertiti in valori, così il costo per risultato
+ * è un incremento di un array anche con milioni di hits.
+ * Ogni file ha come cartelle tutte quelle che lo contengono, quindi il conteggio di una cartella comprende
+ * le sue sottocartelle. Come totalHits, i conteggi sono per documento: un file diviso in passaggi conta una volta
+ * per ogni passaggio trovato.
+ */
+public final class FacetCounts {
+    /**
+     * Un valore e il numero di risultati che lo hanno.
+     */
+    public static final class Entry {
+        public final String value;
+        public final long count;
+
+        Entry(String value, long count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        @Override
+        public String toString() {
+            return value + " (" + count + ")";
+        }
+    }
+
+    private final long documents;
+    private final Map<String, Map<String, Long>> counts;
+
+    private FacetCounts(long documents, Map<String, Map<String, Long>> counts) {
+        this.documents = documents;
+        this.counts = counts;
+    }
+
+    /**
+     * @return il numero di documenti contati.
+     */
+    public long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return il numero di risultati con il valore indicato del campo.
+     */
+    public long count(String field, String value) {
+        return counts.getOrDefault(field, Collections.emptyMap()).getOrDefault(value, 0L);
+    }
+
+    /**
+     * @param field il campo, TextFileIndexer.CARTELLA o TextFileIndexer.ESTENSIONE.
+     * @param n     numero massimo di valori.
+     * @return i valori del campo con più risultati, in ordine di conteggio decrescente.
+     */
+    public List<Entry> top(String field, int n) {
+        return top(counts.getOrDefault(field, Collections.emptyMap()).entrySet(), n);
+    }
+
+    /**
+     * @return la cartella più profonda che contiene tutti i risultati, oppure null se non c'è
+     * (o l'indice è stato creato senza le cartelle).
+     */
+    public String commonDirectory() {
+        String common = null;
+        for (Map.Entry<String, Long> e : counts.getOrDefault(TextFileIndexer.CARTELLA, Collections.emptyMap())
+                .entrySet()) {
+            if (e.getValue() == documents && (common == null || e.getKey().length() > common.length())) {
+                common = e.getKey();
+            }
+        }
+        return common;
+    }
+
+    /**
+     * @param directory la cartella, oppure null per le cartelle radice.
+     * @param n         numero massimo di sottocartelle.
+     * @return le sottocartelle dirette di directory con più risultati, in ordine di conteggio decrescente.
+     */
+    public List<Entry> subdirectories(String directory, int n) {
+        List<Map.Entry<String, Long>> children = new ArrayList<>();
+        for (Map.Entry<String, Long> e : counts.getOrDefault(TextFileIndexer.CARTELLA, Collections.emptyMap())
+                .entrySet()) {
+            Path parent = Paths.get(e.getKey()).getParent();
+            if (Objects.equals(parent == null ? null : parent.toString(), directory)) {
+                children.add(e);
+            }
+        }
+        return top(children, n);
+    }
+
+    private static List<Entry> top(Collection<Map.Entry<String, Long>> values, int n) {
+        List<Entry> entries = new ArrayList<>(values.size());
+        for (Map.Entry<String, Long> e : values) {
+            entries.add(new Entry(e.getKey(), e.getValue()));
+        }
+        entries.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.value.compareTo(b.value));
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    /**
+     * @return una stima della memoria occupata, per la QueryResultCache.
+     */
+    long ramBytesUsed() {
+        long size = 0;
+        for (Map<String, Long> values : counts.values()) {
+            for (String value : values.keySet()) {
+                // voce della mappa e Long
+                size += 64 + RamUsageEstimator.sizeOf(value);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param fields i campi indicizzati come SortedSetDocValuesField.
+     * @return il CollectorManager che conta i valori dei campi dei documenti trovati, da usare insieme
+     * a quello del top-k con un MultiCollectorManager.
+     */
+    static CollectorManager<Counter, FacetCounts> manager(String... fields) {
+        return new CollectorManager<Counter, FacetCounts>() {
+            @Override
+            public Counter newCollector() {
+                return new Counter(fields);
+            }
+
+            @Override
+            public FacetCounts reduce(Collection<Counter> collectors) throws IOException {
+                long documents = 0;
+                Map<String, Map<String, Long>> counts = new HashMap<>();
+                for (Counter counter : collectors) {
+                    counter.flush();
+                    documents += counter.documents;
+                    for (int i = 0; i < fields.length; i++) {
+                        Map<String, Long> values = counts.computeIfAbsent(fields[i], f -> new HashMap<>());
+                        counter.counts.get(i).forEach((value, count) -> values.merge(value, count, Long::sum));
+                    }
+                }
+                return new FacetCounts(documents, counts);
+            }
+        };
+    }
+
+    /**
+     * Conta gli ordinali dei documenti di un segmento; i conteggi vengono convertiti in valori quando si passa
+     * al segmento successivo o in reduce. Ogni slice della ricerca ha il suo Counter.
+     */
+    static final class Counter extends SimpleCollector {
+        private final String[] fields;
+        private final List<Map<String, Long>> counts = new ArrayList<>();
+        private final SortedSetDocValues[] values;
+        // conteggi per ordinale del segmento corrente, riusati e azzerati da flush
+        private final int[][] ordCounts;
+        private long documents;
+
+        Counter(String[] fields) {
+            this.fields = fields;
+            this.values = new SortedSetDocValues[fields.length];
+            this.ordCounts = new int[fields.length][];
+            for (int i = 0; i < fields.length; i++) {
+                counts.add(new HashMap<>());
+                ordCounts[i] = new int[0];
+            }
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            flush();
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = DocValues.getSortedSet(context.reader(), fields[i]);
+                // gli ordinali di un singolo segmento sono al massimo il numero di documenti, quindi int
+                ordCounts[i] = ArrayUtil.grow(ordCounts[i], (int) values[i].getValueCount());
+            }
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            documents++;
+            for (int i = 0; i < fields.length; i++) {
+                SortedSetDocValues docValues = values[i];
+                if (docValues.advanceExact(doc)) {
+                    int[] ords = ordCounts[i];
+                    for (int j = docValues.docValueCount(); j > 0; j--) {
+                        ords[(int) docValues.nextOrd()]++;
+                    }
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            for (int i = 0; i < fields.length; i++) {
+                SortedSetDocValues docValues = values[i];
+                if (docValues == null) {
+                    continue;
+                }
+                int[] ords = ordCounts[i];
+                Map<String, Long> fieldCounts = counts.get(i);
+                for (int ord = 0; ord < docValues.getValueCount(); ord++) {
+                    if (ords[ord] > 0) {
+                        fieldCounts.merge(docValues.lookupOrd(ord).utf8ToString(), (long) ords[ord], Long::sum);
+                        ords[ord] = 0;
+                    }
+                }
+                values[i] = null;
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+}
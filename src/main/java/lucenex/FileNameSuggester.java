@@ -0,0 +1,209 @@
+package lucenex;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingSuggester;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Completamento dei nomi dei file a partire dal prefisso digitato, con un AnalyzingSuggester:
+ * un FST in memoria costruito dai nomi analizzati con lo stesso Analyzer del campo nome,
+ * quindi "data sc" completa "data_scientist.txt". I nomi più frequenti nell'indice vengono proposti prima.
+ * La ricostruzione legge di nuovo solo i segmenti nuovi o con nuove cancellazioni e non ricrea l'FST se i nomi
+ * non sono cambiati; i suggerimenti continuano dall'FST precedente finché quello nuovo non è pronto.
+ */
+public class FileNameSuggester {
+    private static final Set<String> NOME = Collections.singleton("nome");
+
+    private final Analyzer analyzer;
+    // numero di file per nome di ogni segmento, indicizzato con la chiave del reader del segmento
+    private Map<Object, Map<String, Long>> segmentCounts = new HashMap<>();
+    private Map<String, Long> counts = Collections.emptyMap();
+    private volatile AnalyzingSuggester suggester;
+
+    /**
+     * Un nome suggerito.
+     */
+    public static class Suggestion {
+        public final String name;
+        /** numero di file con questo nome */
+        public final long count;
+
+        Suggestion(String name, long count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    /**
+     * @param analyzer l'Analyzer del campo nome.
+     */
+    FileNameSuggester(Analyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Ricostruisce l'FST dai nomi dei file in reader, se sono cambiati.
+     *
+     * @return il numero di nomi distinti.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    synchronized int build(IndexReader reader) throws IOException {
+        Map<Object, Map<String, Long>> newSegmentCounts = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        for (LeafReaderContext context : reader.leaves()) {
+            LeafReader leaf = context.reader();
+            // la chiave del reader cambia anche quando cambiano le cancellazioni del segmento
+            IndexReader.CacheHelper cacheHelper = leaf.getReaderCacheHelper();
+            Object key = cacheHelper == null ? null : cacheHelper.getKey();
+            Map<String, Long> segment = key == null ? null : segmentCounts.get(key);
+            if (segment == null) {
+                segment = count(leaf);
+            }
+            if (key != null) {
+                newSegmentCounts.put(key, segment);
+            }
+            for (Map.Entry<String, Long> e : segment.entrySet()) {
+                counts.merge(e.getKey(), e.getValue(), Long::sum);
+            }
+        }
+        segmentCounts = newSegmentCounts;
+        // se sono cambiati solo i contenuti dei file, l'FST resta lo stesso
+        if (counts.equals(this.counts)) {
+            return counts.size();
+        }
+        this.counts = counts;
+
+        if (counts.isEmpty()) {
+            suggester = null;
+            return 0;
+        }
+        AnalyzingSuggester newSuggester = new AnalyzingSuggester(new ByteBuffersDirectory(), "suggest", analyzer);
+        newSuggester.build(new CountsIterator(counts));
+        suggester = newSuggester;
+        return counts.size();
+    }
+
+    private static Map<String, Long> count(LeafReader leaf) throws IOException {
+        Map<String, Long> counts = new HashMap<>();
+        Bits liveDocs = leaf.getLiveDocs();
+        SortedDocValues values = leaf.getSortedDocValues("nome");
+        if (values == null && leaf.getFieldInfos().fieldInfo("nome") != null) {
+            // segmento scritto prima dei DocValues: si leggono i campi memorizzati
+            for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    String name = leaf.document(doc, NOME).get("nome");
+                    if (name != null) {
+                        counts.merge(name, 1L, Long::sum);
+                    }
+                }
+            }
+            return counts;
+        }
+        if (values == null) {
+            // solo passaggi di file grandi dopo il primo, che non hanno il nome
+            return counts;
+        }
+        long[] ordCounts = new long[values.getValueCount()];
+        for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+            if (liveDocs == null || liveDocs.get(doc)) {
+                ordCounts[values.ordValue()]++;
+            }
+        }
+        for (int ord = 0; ord < ordCounts.length; ord++) {
+            if (ordCounts[ord] > 0) {
+                counts.put(values.lookupOrd(ord).utf8ToString(), ordCounts[ord]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param prefix il prefisso digitato.
+     * @param num    il numero massimo di suggerimenti.
+     * @return i nomi che iniziano con il prefisso, i più frequenti per primi.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    List<Suggestion> lookup(String prefix, int num) throws IOException {
+        AnalyzingSuggester current = suggester;
+        if (current == null || prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Lookup.LookupResult> results = current.lookup(prefix, false, num);
+        List<Suggestion> suggestions = new ArrayList<>(results.size());
+        for (Lookup.LookupResult result : results) {
+            suggestions.add(new Suggestion(result.key.toString(), result.value));
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return la memoria usata dall'FST.
+     */
+    long ramBytesUsed() {
+        AnalyzingSuggester current = suggester;
+        return current == null ? 0 : current.ramBytesUsed();
+    }
+
+    private static class CountsIterator implements InputIterator {
+        private final Iterator<Map.Entry<String, Long>> entries;
+        private long weight;
+
+        CountsIterator(Map<String, Long> counts) {
+            this.entries = counts.entrySet().iterator();
+        }
+
+        @Override
+        public BytesRef next() {
+            if (!entries.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, Long> entry = entries.next();
+            // AnalyzingSuggester accetta pesi fino a Integer.MAX_VALUE
+            weight = Math.min(entry.getValue(), Integer.MAX_VALUE);
+            return new BytesRef(entry.getKey());
+        }
+
+        @Override
+        public long weight() {
+            return weight;
+        }
+
+        @Override
+        public BytesRef payload() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPayloads() {
+            return false;
+        }
+
+        @Override
+        public Set<BytesRef> contexts() {
+            return null;
+        }
+
+        @Override
+        public boolean hasContexts() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package lucenex;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Lo stato di un file registrato nell'indice: data di modifica, dimensione e hash del contenuto,
+ * e se il file è registrato come copia di un altro con lo stesso contenuto.
+ * Viene letto dai DocValues, senza caricare i campi memorizzati.
+ */
+class FileState {
+    final long mtime;
+    final long size;
+    final String hash;
+    final boolean duplicate;
+
+    FileState(long mtime, long size, String hash, boolean duplicate) {
+        this.mtime = mtime;
+        this.size = size;
+        this.hash = hash;
+        this.duplicate = duplicate;
+    }
+
+    /**
+     * Cerca lo stato registrato per il documento con il path indicato.
+     *
+     * @param reader    il reader su cui cercare.
+     * @param pathTerm  il termine path del file.
+     * @return lo stato del file, oppure null se il file non è nell'indice.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    static FileState lookup(IndexReader reader, Term pathTerm) throws IOException {
+        for (LeafReaderContext context : reader.leaves()) {
+            LeafReader leaf = context.reader();
+            Terms terms = leaf.terms(pathTerm.field());
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator();
+            if (!termsEnum.seekExact(pathTerm.bytes())) {
+                continue;
+            }
+            Bits liveDocs = leaf.getLiveDocs();
+            PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                NumericDocValues mtime = DocValues.getNumeric(leaf, "mtime");
+                NumericDocValues size = DocValues.getNumeric(leaf, "size");
+                BinaryDocValues hash = DocValues.getBinary(leaf, "hash");
+                NumericDocValues duplicate = DocValues.getNumeric(leaf, TextFileIndexer.DUPLICATO);
+                return new FileState(
+                        mtime.advanceExact(doc) ? mtime.longValue() : -1,
+                        size.advanceExact(doc) ? size.longValue() : -1,
+                        hash.advanceExact(doc) ? hash.binaryValue().utf8ToString() : "",
+                        duplicate.advanceExact(doc));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calcola l'hash SHA-1 del contenuto di un file, in esadecimale.
+     *
+     * @param file il file.
+     * @return l'hash del contenuto.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    static String hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Calcola lo stesso hash di hash(Path) sui byte letti da un canale per altri scopi, ad esempio per decodificare
+     * il testo (vedi PassageReader.open), così il file non viene letto una seconda volta solo per l'hash.
+     */
+    static final class Hasher {
+        private final MessageDigest digest = newDigest();
+        private ReadableByteChannel channel;
+
+        /**
+         * @param in il canale del file, letto dall'inizio.
+         * @return un canale che legge da in e aggiunge all'hash i byte letti.
+         */
+        ReadableByteChannel wrap(ReadableByteChannel in) {
+            channel = new ReadableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    int start = dst.position();
+                    int n = in.read(dst);
+                    if (n > 0) {
+                        ByteBuffer read = dst.duplicate();
+                        read.limit(start + n);
+                        read.position(start);
+                        digest.update(read);
+                    }
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return in.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+            return channel;
+        }
+
+        /**
+         * Legge i byte non ancora letti, ad esempio quelli oltre la parte di testo che serviva, e restituisce
+         * l'hash dell'intero file. Va chiamato prima di chiudere il canale.
+         *
+         * @return l'hash del contenuto, come hash(Path).
+         * @throws IOException se si verifica un errore di I/O.
+         */
+        String hash() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                buffer.clear();
+            }
+            return toHex(digest.digest());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package lucenex;
+
+import java.io.IOException;
+
+/**
+ * Una Function che può lanciare IOException, per aprire reader e searcher con una lambda.
+ */
+@FunctionalInterface
+interface IOFunction<T, R> {
+    R apply(T t) throws IOException;
+}
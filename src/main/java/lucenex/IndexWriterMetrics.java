@@ -0,0 +1,71 @@
+package lucenex;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.util.InfoStream;
+
+import java.io.IOException;
+
+/**
+ * Collega le misure interne di IndexWriter (durata dei flush e dei merge) a degli istogrammi.
+ */
+final class IndexWriterMetrics {
+    // messaggio scritto da DocumentsWriterPerThread alla fine di ogni flush: "flush time 12.345 ms"
+    private static final String FLUSH_COMPONENT = "DWPT";
+    private static final String FLUSH_TIME_PREFIX = "flush time ";
+
+    private IndexWriterMetrics() {
+    }
+
+    /**
+     * @return un ConcurrentMergeScheduler che registra la durata di ogni merge in mergeTime.
+     */
+    static ConcurrentMergeScheduler timedMergeScheduler(LatencyHistogram mergeTime) {
+        return new ConcurrentMergeScheduler() {
+            @Override
+            protected void doMerge(MergeScheduler.MergeSource mergeSource, MergePolicy.OneMerge merge)
+                    throws IOException {
+                long startTime = System.nanoTime();
+                try {
+                    super.doMerge(mergeSource, merge);
+                } finally {
+                    mergeTime.record(System.nanoTime() - startTime);
+                }
+            }
+        };
+    }
+
+    /**
+     * IndexWriter non espone la durata dei flush se non tramite InfoStream: questo InfoStream
+     * ascolta solo i messaggi dei DocumentsWriterPerThread e ne estrae la durata del flush.
+     *
+     * @return un InfoStream che registra la durata di ogni flush in flushTime.
+     */
+    static InfoStream flushTimeInfoStream(LatencyHistogram flushTime) {
+        return new InfoStream() {
+            @Override
+            public void message(String component, String message) {
+                if (FLUSH_COMPONENT.equals(component) && message.startsWith(FLUSH_TIME_PREFIX)) {
+                    int end = message.indexOf(' ', FLUSH_TIME_PREFIX.length());
+                    try {
+                        double millis = Double.parseDouble(message.substring(FLUSH_TIME_PREFIX.length(),
+                                end < 0 ? message.length() : end));
+                        flushTime.record((long) (millis * 1_000_000));
+                    } catch (NumberFormatException e) {
+                        // formato del messaggio diverso da quello atteso, la misura viene ignorata
+                    }
+                }
+            }
+
+            @Override
+            public boolean isEnabled(String component) {
+                return FLUSH_COMPONENT.equals(component);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
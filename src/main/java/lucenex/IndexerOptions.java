@@ -0,0 +1,473 @@
+package lucenex;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opzioni di configurazione di TextFileIndexer.
+ * Si possono impostare da codice oppure da riga di comando con argomenti della forma --nome=valore.
+ */
+public class IndexerOptions {
+    private String indexDir = "tmp/index";
+    private int numWorkers = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1024;
+    private CodecMode codec = CodecMode.DEFAULT;
+    private boolean incremental = false;
+    private long metricsIntervalSeconds = 0;
+    private int numShards = 1;
+    private WriterProfile profile = null;
+    private long commitDocs = -1;
+    private long commitSeconds = -1;
+    private int forceMergeSegments = 0;
+    private List<String> watchRoots = Collections.emptyList();
+    private long debounceMillis = 200;
+    private long nrtRefreshMillis = 1000;
+    private int searchPort = 0;
+    private String searchQueryLog = null;
+    private boolean snippets = false;
+    private Charset charset = null;
+    private long splitAboveBytes = 1024 * 1024;
+    private int passageChars = 8192;
+    private Map<String, ContentExtractor> extractors = ContentExtractor.defaults();
+    private boolean dedup = false;
+    private SortMode indexSort = SortMode.SCORE;
+
+    public String getIndexDir() {
+        return indexDir;
+    }
+
+    public IndexerOptions setIndexDir(String indexDir) {
+        this.indexDir = indexDir;
+        return this;
+    }
+
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * @param numWorkers numero di thread che leggono, analizzano e aggiungono i documenti.
+     */
+    public IndexerOptions setNumWorkers(int numWorkers) {
+        this.numWorkers = numWorkers;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity numero massimo di file in attesa di essere indicizzati.
+     */
+    public IndexerOptions setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public CodecMode getCodec() {
+        return codec;
+    }
+
+    /**
+     * @param codec il codec con cui scrivere l'indice.
+     */
+    public IndexerOptions setCodec(CodecMode codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @param incremental se true l'indice esistente viene aggiornato invece di essere ricreato:
+     *                    i file non modificati vengono saltati e quelli scomparsi rimossi.
+     */
+    public IndexerOptions setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public long getMetricsIntervalSeconds() {
+        return metricsIntervalSeconds;
+    }
+
+    /**
+     * @param metricsIntervalSeconds ogni quanti secondi stampare le metriche dell'indicizzazione; 0 per non stamparle.
+     */
+    public IndexerOptions setMetricsIntervalSeconds(long metricsIntervalSeconds) {
+        this.metricsIntervalSeconds = metricsIntervalSeconds;
+        return this;
+    }
+
+    public int getNumShards() {
+        return numShards;
+    }
+
+    /**
+     * @param numShards numero di shard in cui dividere l'indice, ognuno con il proprio IndexWriter;
+     *                  con 1 l'indice non viene diviso.
+     */
+    public IndexerOptions setNumShards(int numShards) {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Il numero di shard deve essere almeno 1: " + numShards);
+        }
+        this.numShards = numShards;
+        return this;
+    }
+
+    /**
+     * @return il profilo indicato oppure, se non indicato, STEADY_STATE per gli aggiornamenti incrementali
+     * e BULK_LOAD per la creazione dell'indice.
+     */
+    public WriterProfile getProfile() {
+        if (profile != null) {
+            return profile;
+        }
+        return incremental ? WriterProfile.STEADY_STATE : WriterProfile.BULK_LOAD;
+    }
+
+    /**
+     * @param profile la configurazione di IndexWriter; null per sceglierla in base a incremental.
+     */
+    public IndexerOptions setProfile(WriterProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public long getCommitDocs() {
+        return commitDocs >= 0 ? commitDocs : getProfile().getCommitDocs();
+    }
+
+    /**
+     * @param commitDocs dopo quanti documenti aggiunti o aggiornati fare commit; 0 per non farlo,
+     *                   -1 per usare il valore del profilo.
+     */
+    public IndexerOptions setCommitDocs(long commitDocs) {
+        this.commitDocs = commitDocs;
+        return this;
+    }
+
+    public long getCommitSeconds() {
+        return commitSeconds >= 0 ? commitSeconds : getProfile().getCommitSeconds();
+    }
+
+    /**
+     * @param commitSeconds dopo quanti secondi dall'ultimo commit farne un altro; 0 per non farlo,
+     *                      -1 per usare il valore del profilo.
+     */
+    public IndexerOptions setCommitSeconds(long commitSeconds) {
+        this.commitSeconds = commitSeconds;
+        return this;
+    }
+
+    public int getForceMergeSegments() {
+        return forceMergeSegments;
+    }
+
+    /**
+     * @param forceMergeSegments se maggiore di zero, alla chiusura l'indice (ogni shard) viene unito
+     *                           in al massimo questo numero di segmenti.
+     */
+    public IndexerOptions setForceMergeSegments(int forceMergeSegments) {
+        this.forceMergeSegments = forceMergeSegments;
+        return this;
+    }
+
+    public List<String> getWatchRoots() {
+        return watchRoots;
+    }
+
+    /**
+     * @param watchRoots se non vuoto, TextFileIndexer indicizza queste cartelle e poi resta in esecuzione
+     *                   aggiornando l'indice a ogni modifica dei file, invece di leggere le cartelle da console.
+     */
+    public IndexerOptions setWatchRoots(List<String> watchRoots) {
+        this.watchRoots = watchRoots;
+        return this;
+    }
+
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    /**
+     * @param debounceMillis le modifiche ai file vengono applicate a gruppi, quando per debounceMillis
+     *                       non ne arrivano altre.
+     */
+    public IndexerOptions setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+        return this;
+    }
+
+    public long getNrtRefreshMillis() {
+        return nrtRefreshMillis;
+    }
+
+    /**
+     * @param nrtRefreshMillis ogni quanti millisecondi le ricerche del server avviato con searchPort
+     *                         vedono le modifiche non ancora salvate con un commit.
+     */
+    public IndexerOptions setNrtRefreshMillis(long nrtRefreshMillis) {
+        this.nrtRefreshMillis = nrtRefreshMillis;
+        return this;
+    }
+
+    public int getSearchPort() {
+        return searchPort;
+    }
+
+    /**
+     * @param searchPort se maggiore di zero, mentre osserva le cartelle TextFileIndexer avvia anche
+     *                   un server di ricerca su questa porta che cerca sui reader near-real-time.
+     */
+    public IndexerOptions setSearchPort(int searchPort) {
+        this.searchPort = searchPort;
+        return this;
+    }
+
+    public String getSearchQueryLog() {
+        return searchQueryLog;
+    }
+
+    /**
+     * @param searchQueryLog registro delle query del server avviato con searchPort, con cui i reader near-real-time
+     *                       vengono riscaldati a ogni riapertura (vedi SearchOptions.setQueryLog); null per nessuno.
+     */
+    public IndexerOptions setSearchQueryLog(String searchQueryLog) {
+        this.searchQueryLog = searchQueryLog;
+        return this;
+    }
+
+    public boolean isSnippets() {
+        return snippets;
+    }
+
+    /**
+     * @param snippets se true il contenuto viene memorizzato e indicizzato con gli offset dei termini,
+     *                 per creare gli snippet dei risultati senza rileggere i file. Un indice creato senza
+     *                 snippet va ricreato per attivarli.
+     */
+    public IndexerOptions setSnippets(boolean snippets) {
+        this.snippets = snippets;
+        return this;
+    }
+
+    /**
+     * @return la codifica dei file, oppure null se viene riconosciuta file per file.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @param charset la codifica dei file; null per riconoscerla dai primi byte di ogni file
+     *                (BOM, UTF-8 valido, altrimenti windows-1252).
+     */
+    public IndexerOptions setCharset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    public long getSplitAboveBytes() {
+        return splitAboveBytes;
+    }
+
+    /**
+     * @param splitAboveBytes i file più grandi di questo numero di byte vengono indicizzati come passaggi
+     *                        di passageChars caratteri, ognuno un documento con il path del file;
+     *                        0 per indicizzare sempre un file come un solo documento. Con gli snippet i file
+     *                        oltre TextFileIndexer.MAX_SNIPPET_DOC_BYTES vengono divisi comunque.
+     */
+    public IndexerOptions setSplitAboveBytes(long splitAboveBytes) {
+        this.splitAboveBytes = splitAboveBytes;
+        return this;
+    }
+
+    public int getPassageChars() {
+        return passageChars;
+    }
+
+    /**
+     * @param passageChars lunghezza massima in caratteri dei passaggi dei file grandi.
+     */
+    public IndexerOptions setPassageChars(int passageChars) {
+        if (passageChars < 1) {
+            throw new IllegalArgumentException("La lunghezza dei passaggi deve essere almeno 1: " + passageChars);
+        }
+        this.passageChars = passageChars;
+        return this;
+    }
+
+    /**
+     * @return gli estrattori del contenuto per estensione; vengono indicizzati solo i file con queste estensioni.
+     */
+    public Map<String, ContentExtractor> getExtractors() {
+        return extractors;
+    }
+
+    /**
+     * Indicizza i file con un'estensione, estraendone il contenuto con extractor.
+     *
+     * @param extension l'estensione, senza punto.
+     * @param extractor l'estrattore del contenuto, oppure null per non indicizzare più questi file.
+     */
+    public IndexerOptions setExtractor(String extension, ContentExtractor extractor) {
+        if (extractor == null) {
+            extractors.remove(extension.toLowerCase());
+        } else {
+            extractors.put(extension.toLowerCase(), extractor);
+        }
+        return this;
+    }
+
+    /**
+     * Indicizza solo i file con le estensioni indicate, con gli estrattori predefiniti.
+     *
+     * @param extensions le estensioni, senza punto.
+     * @throws IllegalArgumentException se un'estensione non ha un estrattore predefinito.
+     */
+    public IndexerOptions setExtensions(List<String> extensions) {
+        Map<String, ContentExtractor> defaults = ContentExtractor.defaults();
+        Map<String, ContentExtractor> selected = new LinkedHashMap<>();
+        for (String extension : extensions) {
+            String key = extension.trim().toLowerCase();
+            ContentExtractor extractor = defaults.get(key);
+            if (extractor == null) {
+                throw new IllegalArgumentException("Formato non supportato: " + extension
+                        + " (supportati: " + defaults.keySet() + ")");
+            }
+            selected.put(key, extractor);
+        }
+        this.extractors = selected;
+        return this;
+    }
+
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    /**
+     * @param dedup se true un file con lo stesso contenuto (hash) di un file già indicizzato nello stesso shard
+     *              viene registrato solo con nome, path e stato, e i suoi risultati compaiono come copie di quelli
+     *              del primo file; ai documenti si aggiunge anche la firma SimHash del contenuto, con cui le ricerche
+     *              raggruppano i quasi duplicati.
+     */
+    public IndexerOptions setDedup(boolean dedup) {
+        this.dedup = dedup;
+        return this;
+    }
+
+    public SortMode getIndexSort() {
+        return indexSort;
+    }
+
+    /**
+     * @param indexSort ordine dei documenti nei segmenti: con MTIME o PATH le ricerche ordinate allo stesso modo
+     *                  (vedi SearchOptions.setSort) si fermano dopo i primi risultati; SCORE per non ordinare.
+     *                  L'ordine non può cambiare in un indice esistente, che va ricreato.
+     */
+    public IndexerOptions setIndexSort(SortMode indexSort) {
+        this.indexSort = indexSort;
+        return this;
+    }
+
+    /**
+     * Legge le opzioni dagli argomenti della riga di comando.
+     *
+     * @param args argomenti della forma --nome=valore.
+     * @return le opzioni lette.
+     * @throws IllegalArgumentException se un argomento non è riconosciuto.
+     */
+    public static IndexerOptions parse(String[] args) {
+        IndexerOptions options = new IndexerOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Argomento non valido: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "index":
+                    options.setIndexDir(value);
+                    break;
+                case "workers":
+                    options.setNumWorkers(Integer.parseInt(value));
+                    break;
+                case "queue":
+                    options.setQueueCapacity(Integer.parseInt(value));
+                    break;
+                case "codec":
+                    options.setCodec(CodecMode.fromName(value));
+                    break;
+                case "incremental":
+                    options.setIncremental(Boolean.parseBoolean(value));
+                    break;
+                case "metrics":
+                    options.setMetricsIntervalSeconds(Long.parseLong(value));
+                    break;
+                case "shards":
+                    options.setNumShards(Integer.parseInt(value));
+                    break;
+                case "profile":
+                    options.setProfile(WriterProfile.fromName(value));
+                    break;
+                case "commit-docs":
+                    options.setCommitDocs(Long.parseLong(value));
+                    break;
+                case "commit-seconds":
+                    options.setCommitSeconds(Long.parseLong(value));
+                    break;
+                case "force-merge":
+                    options.setForceMergeSegments(Integer.parseInt(value));
+                    break;
+                case "watch":
+                    options.setWatchRoots(Arrays.asList(value.split(",")));
+                    break;
+                case "debounce":
+                    options.setDebounceMillis(Long.parseLong(value));
+                    break;
+                case "nrt-refresh":
+                    options.setNrtRefreshMillis(Long.parseLong(value));
+                    break;
+                case "search-port":
+                    options.setSearchPort(Integer.parseInt(value));
+                    break;
+                case "query-log":
+                    options.setSearchQueryLog(value);
+                    break;
+                case "snippets":
+                    options.setSnippets(Boolean.parseBoolean(value));
+                    break;
+                case "charset":
+                    options.setCharset(value.equalsIgnoreCase("auto") ? null : Charset.forName(value));
+                    break;
+                case "split-above":
+                    options.setSplitAboveBytes(Long.parseLong(value));
+                    break;
+                case "passage-chars":
+                    options.setPassageChars(Integer.parseInt(value));
+                    break;
+                case "extensions":
+                    options.setExtensions(Arrays.asList(value.split(",")));
+                    break;
+                case "dedup":
+                    options.setDedup(Boolean.parseBoolean(value));
+                    break;
+                case "index-sort":
+                    options.setIndexSort(SortMode.fromName(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opzione sconosciuta: " + name);
+            }
+        }
+        return options;
+    }
+}
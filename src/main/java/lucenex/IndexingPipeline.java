@@ -0,0 +1,203 @@
+package lucenex;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Pipeline di indicizzazione: un produttore visita l'albero delle cartelle in modo lazy
+ * e deposita i file in una coda limitata, mentre N worker li consumano in parallelo.
+ * La coda limitata fa da backpressure: se i worker sono lenti il produttore si ferma.
+ */
+class IndexingPipeline {
+    /**
+     * Operazione eseguita dai worker su ogni file accettato dal filtro.
+     */
+    interface FileHandler {
+        void handle(Path file) throws IOException;
+    }
+
+    /**
+     * Statistiche di un'esecuzione della pipeline.
+     */
+    static class Stats {
+        final long files;
+        final long failures;
+        final long elapsedNanos;
+
+        Stats(long files, long failures, long elapsedNanos) {
+            this.files = files;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double docsPerSecond() {
+            return elapsedNanos == 0 ? 0 : files * 1_000_000_000d / elapsedNanos;
+        }
+    }
+
+    // segnale di fine coda, uno per ogni worker
+    private static final Path POISON = Paths.get("");
+
+    private final int numWorkers;
+    private final int queueCapacity;
+    private final Predicate<Path> filter;
+
+    /**
+     * @param numWorkers    numero di thread che elaborano i file.
+     * @param queueCapacity numero massimo di file in attesa nella coda.
+     * @param filter        i file da elaborare.
+     */
+    IndexingPipeline(int numWorkers, int queueCapacity, Predicate<Path> filter) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("numWorkers deve essere almeno 1: " + numWorkers);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity deve essere almeno 1: " + queueCapacity);
+        }
+        this.numWorkers = numWorkers;
+        this.queueCapacity = queueCapacity;
+        this.filter = filter;
+    }
+
+    /**
+     * Visita root ed esegue handler su ogni file accettato dal filtro.
+     *
+     * @param root    il file o la cartella da visitare.
+     * @param handler l'operazione da eseguire su ogni file.
+     * @return le statistiche dell'esecuzione.
+     * @throws IOException se la visita fallisce o un worker termina in modo anomalo.
+     */
+    Stats run(Path root, FileHandler handler) throws IOException {
+        long startTime = System.nanoTime();
+        BlockingQueue<Path> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicLong files = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        AtomicReference<Throwable> workerError = new AtomicReference<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers, r -> {
+            Thread t = new Thread(r, "indexer-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            workers.add(executor.submit(() -> {
+                try {
+                    consume(queue, handler, files, failures);
+                } catch (Throwable t) {
+                    workerError.compareAndSet(null, t);
+                    throw t;
+                }
+                return null;
+            }));
+        }
+
+        try {
+            if (!Files.exists(root)) {
+                System.out.println(root + " non esiste.");
+            } else {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (attrs.isRegularFile() && filter.test(file)) {
+                            put(queue, file, workerError);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        System.out.println("Non può essere letto: " + file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } finally {
+            for (int i = 0; i < numWorkers; i++) {
+                if (!offerPoison(queue, workerError)) {
+                    break;
+                }
+            }
+            executor.shutdown();
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                throw new InterruptedIOException("indicizzazione interrotta");
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                throw new IOException("worker di indicizzazione terminato in modo anomalo", e.getCause());
+            }
+        }
+        return new Stats(files.get(), failures.get(), System.nanoTime() - startTime);
+    }
+
+    private static void consume(BlockingQueue<Path> queue, FileHandler handler, AtomicLong files,
+                                AtomicLong failures) throws InterruptedException {
+        while (true) {
+            Path file = queue.take();
+            if (file == POISON) {
+                return;
+            }
+            try {
+                handler.handle(file);
+                files.incrementAndGet();
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                System.out.println("Non può essere aggiunto: " + file);
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    // attende spazio nella coda, ma si arrende se un worker è già fallito
+    private static void put(BlockingQueue<Path> queue, Path file, AtomicReference<Throwable> workerError)
+            throws IOException {
+        try {
+            while (!queue.offer(file, 100, TimeUnit.MILLISECONDS)) {
+                if (workerError.get() != null) {
+                    throw new IOException("worker di indicizzazione terminato in modo anomalo", workerError.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("indicizzazione interrotta");
+        }
+    }
+
+    private static boolean offerPoison(BlockingQueue<Path> queue, AtomicReference<Throwable> workerError) {
+        try {
+            while (!queue.offer(POISON, 100, TimeUnit.MILLISECONDS)) {
+                if (workerError.get() != null) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
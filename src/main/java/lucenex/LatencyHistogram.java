@@ -0,0 +1,98 @@
+package lucenex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Istogramma delle latenze a bucket log-lineari: ogni potenza di due è divisa in 16 bucket,
+ * quindi i percentili hanno un errore relativo di al più 1/16.
+ * La registrazione è senza lock e può essere fatta da più thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // i valori minori di LINEAR_LIMIT hanno un bucket ciascuno
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int NUM_BUCKETS = LINEAR_LIMIT + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos la durata da registrare, in nanosecondi.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exp - SUB_BITS - 1) * SUB_BUCKETS + mantissa;
+    }
+
+    // valore centrale del bucket
+    static long bucketValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exp = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BITS + 1;
+        int mantissa = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        int shift = exp - SUB_BITS;
+        long lower = (long) (SUB_BUCKETS + mantissa) << shift;
+        return lower + (1L << shift) / 2;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * @param p il percentile tra 0 e 1.
+     * @return il valore approssimato al percentile p, in nanosecondi.
+     */
+    public long getPercentileNanos(double p) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * n));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dus p50=%dus p99=%dus p999=%dus max=%dus", getCount(),
+                getMeanNanos() / 1000, getPercentileNanos(0.5) / 1000, getPercentileNanos(0.99) / 1000,
+                getPercentileNanos(0.999) / 1000, getMaxNanos() / 1000);
+    }
+}
@@ -0,0 +1,77 @@
+package lucenex;
+
+import org.apache.lucene.analysis.charfilter.BaseCharFilter;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * CharFilter che toglie dal Markdown gli indirizzi di link e immagini, "[testo](indirizzo)" diventa "[testo]",
+ * così gli URL non finiscono nell'indice come parole. Il resto della sintassi (#, *, _, `, &gt;) è punteggiatura
+ * che il tokenizer ignora già. Legge un carattere alla volta, senza tenere in memoria il documento.
+ */
+final class MarkdownCharFilter extends BaseCharFilter {
+    private int inputOffset;
+    private int outputOffset;
+    private int pending = -1;
+
+    MarkdownCharFilter(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = next();
+        if (c == ']') {
+            int d = next();
+            if (d == '(') {
+                skipDestination();
+            } else {
+                pending = d;
+            }
+        }
+        if (c >= 0) {
+            outputOffset++;
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int c = read();
+            if (c < 0) {
+                return n == 0 ? -1 : n;
+            }
+            cbuf[off + n++] = (char) c;
+        }
+        return n;
+    }
+
+    // salta l'indirizzo fino alla parentesi chiusa; un a capo interrompe l'indirizzo e resta nel testo
+    private void skipDestination() throws IOException {
+        for (int c = next(); c >= 0 && c != ')'; c = next()) {
+            if (c == '\n') {
+                pending = c;
+                break;
+            }
+        }
+        // dopo "]" il carattere successivo del testo corrisponde a quello dopo l'indirizzo nel file
+        int diff = inputOffset - (pending >= 0 ? 1 : 0) - (outputOffset + 1);
+        addOffCorrectMap(outputOffset + 1, diff);
+    }
+
+    private int next() throws IOException {
+        if (pending >= 0) {
+            int c = pending;
+            pending = -1;
+            return c;
+        }
+        int c = input.read();
+        if (c >= 0) {
+            inputOffset++;
+        }
+        return c;
+    }
+}
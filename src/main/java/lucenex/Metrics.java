@@ -0,0 +1,210 @@
+package lucenex;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Insieme di metriche con nome: istogrammi di latenza, contatori e valori calcolati (gauge).
+ * Le metriche si possono leggere via JMX, con il nome lucenex:type=&lt;nome&gt;, oppure come testo
+ * con dump(), anche periodicamente.
+ * Gli attributi JMX di un istogramma x sono x.count, x.p50, x.p99, x.p999 e x.max, in microsecondi.
+ */
+public class Metrics implements DynamicMBean {
+    private final String type;
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    private ObjectName objectName;
+    private ScheduledExecutorService dumper;
+
+    /**
+     * @param type il nome dell'insieme di metriche (es. "search").
+     */
+    public Metrics(String type) {
+        this.type = type;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public void gauge(String name, DoubleSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Registra le metriche nel MBeanServer della JVM. Se il nome è già usato da un'altra istanza
+     * si aggiunge un identificativo progressivo.
+     */
+    public synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int id = 1; objectName == null; id++) {
+                ObjectName name = new ObjectName("lucenex:type=" + type + (id == 1 ? "" : ",id=" + id));
+                try {
+                    server.registerMBean(this, name);
+                    objectName = name;
+                } catch (InstanceAlreadyExistsException e) {
+                    // nome già usato, si prova il successivo
+                }
+            }
+        } catch (JMException e) {
+            System.out.println("Impossibile registrare le metriche " + type + " via JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stampa periodicamente le metriche.
+     *
+     * @param intervalSeconds ogni quanti secondi stampare.
+     * @param out             dove stampare.
+     */
+    public synchronized void startDump(long intervalSeconds, PrintStream out) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump-" + type);
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> out.print(dump()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ferma la stampa periodica e toglie le metriche da JMX.
+     */
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // già rimosso
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return tutte le metriche come testo, una per riga.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+            sb.append(type).append('.').append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            sb.append(type).append('.').append(e.getKey()).append(' ').append(e.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, DoubleSupplier> e : gauges.entrySet()) {
+            sb.append(type).append('.').append(e.getKey()).append(' ')
+                    .append(String.format("%.3f", e.getValue().getAsDouble())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongAdder counter = counters.get(attribute);
+        if (counter != null) {
+            return counter.sum();
+        }
+        DoubleSupplier gauge = gauges.get(attribute);
+        if (gauge != null) {
+            return gauge.getAsDouble();
+        }
+        int dot = attribute.lastIndexOf('.');
+        LatencyHistogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+        if (histogram != null) {
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return histogram.getCount();
+                case "p50":
+                    return histogram.getPercentileNanos(0.5) / 1000;
+                case "p99":
+                    return histogram.getPercentileNanos(0.99) / 1000;
+                case "p999":
+                    return histogram.getPercentileNanos(0.999) / 1000;
+                case "max":
+                    return histogram.getMaxNanos() / 1000;
+                default:
+                    break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Le metriche sono in sola lettura: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // gli attributi sconosciuti vengono omessi
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : histograms.keySet()) {
+            for (String suffix : new String[]{"count", "p50", "p99", "p999", "max"}) {
+                attributes.add(new MBeanAttributeInfo(name + "." + suffix, "long",
+                        suffix.equals("count") ? "numero di misure" : "microsecondi", true, false, false));
+            }
+        }
+        for (String name : counters.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", "contatore", true, false, false));
+        }
+        for (String name : gauges.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "double", "valore", true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metriche " + type,
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,184 @@
+package lucenex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Legge un testo a passaggi di al massimo maxChars caratteri, con memoria costante qualunque sia
+ * la dimensione del testo. I file vengono aperti con open(), che li legge da un FileChannel e li decodifica
+ * con la codifica indicata o riconosciuta dai primi byte (vedi detectCharset).
+ * Un passaggio termina, se possibile, a fine riga o dopo uno spazio, così le parole non vengono divise.
+ */
+final class PassageReader implements Closeable {
+    // byte letti all'inizio del file per riconoscerne la codifica
+    private static final int SAMPLE_BYTES = 64 * 1024;
+    // codifica dei file che non sono UTF-8 validi
+    private static final Charset FALLBACK = Charset.isSupported("windows-1252")
+            ? Charset.forName("windows-1252") : StandardCharsets.ISO_8859_1;
+
+    private final Reader in;
+    private final char[] buffer;
+    private int length;
+    private boolean eof;
+
+    /**
+     * @param in       il testo da dividere, chiuso insieme al PassageReader.
+     * @param maxChars lunghezza massima di un passaggio.
+     */
+    PassageReader(Reader in, int maxChars) {
+        if (maxChars < 1) {
+            throw new IllegalArgumentException("maxChars deve essere almeno 1: " + maxChars);
+        }
+        this.in = in;
+        this.buffer = new char[maxChars];
+    }
+
+    /**
+     * @return il passaggio successivo, oppure null alla fine del testo.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    String next() throws IOException {
+        while (length < buffer.length && !eof) {
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                eof = true;
+            } else {
+                length += n;
+            }
+        }
+        if (length == 0) {
+            return null;
+        }
+        int end = eof ? length : cut();
+        String passage = new String(buffer, 0, end);
+        System.arraycopy(buffer, end, buffer, 0, length - end);
+        length -= end;
+        return passage;
+    }
+
+    // fine del passaggio nel buffer pieno: dopo l'ultimo a capo o spazio della seconda metà, altrimenti
+    // alla fine del buffer senza dividere una coppia di surrogati
+    private int cut() {
+        int min = length / 2;
+        for (int i = length - 1; i >= min; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        for (int i = length - 1; i >= min; i--) {
+            if (Character.isWhitespace(buffer[i])) {
+                return i + 1;
+            }
+        }
+        return length > 1 && Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Apre un file di testo come Reader che decodifica il contenuto letto da un FileChannel,
+     * saltando l'eventuale BOM. I byte non validi nella codifica vengono sostituiti, come fa FileReader.
+     *
+     * @param file    il file.
+     * @param charset la codifica, oppure null per riconoscerla con detectCharset.
+     * @return il Reader, da chiudere.
+     * @throws IOException se il file non può essere aperto.
+     */
+    static Reader open(Path file, Charset charset) throws IOException {
+        return open(file, charset, null);
+    }
+
+    /**
+     * Come open(file, charset), ma con hasher i byte letti dal file servono anche a calcolarne l'hash,
+     * che alla fine della lettura si ottiene con hasher.hash().
+     *
+     * @param hasher dove calcolare l'hash del file, oppure null.
+     */
+    static Reader open(Path file, Charset charset, FileState.Hasher hasher) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ReadableByteChannel in = hasher == null ? channel : hasher.wrap(channel);
+            ByteBuffer sample = ByteBuffer.allocate(SAMPLE_BYTES);
+            // il campione viene letto senza spostare la posizione del canale
+            while (sample.hasRemaining()) {
+                if (channel.read(sample, sample.position()) < 0) {
+                    break;
+                }
+            }
+            sample.flip();
+            Charset bom = bomCharset(sample);
+            if (charset == null) {
+                charset = detectCharset(sample);
+            }
+            if (charset.equals(bom)) {
+                // il BOM viene letto e scartato invece di spostare la posizione, così fa parte dell'hash
+                ByteBuffer skip = ByteBuffer.allocate(bomLength(bom));
+                while (skip.hasRemaining()) {
+                    if (in.read(skip) < 0) {
+                        break;
+                    }
+                }
+            }
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            return Channels.newReader(in, decoder, -1);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Riconosce la codifica dai primi byte di un file: quella del BOM se presente, UTF-8 se i byte
+     * sono UTF-8 valido (compreso il testo ASCII), altrimenti windows-1252.
+     *
+     * @param sample i primi byte del file; la posizione non viene modificata.
+     * @return la codifica.
+     */
+    static Charset detectCharset(ByteBuffer sample) {
+        Charset bom = bomCharset(sample);
+        if (bom != null) {
+            return bom;
+        }
+        CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // con endOfInput false un carattere troncato alla fine del campione non è un errore
+        CharBuffer chars = CharBuffer.allocate(sample.remaining());
+        return utf8.decode(sample.duplicate(), chars, false).isError() ? FALLBACK : StandardCharsets.UTF_8;
+    }
+
+    private static Charset bomCharset(ByteBuffer sample) {
+        int b0 = sample.remaining() > 0 ? sample.get(sample.position()) & 0xFF : -1;
+        int b1 = sample.remaining() > 1 ? sample.get(sample.position() + 1) & 0xFF : -1;
+        int b2 = sample.remaining() > 2 ? sample.get(sample.position() + 2) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            return StandardCharsets.UTF_8;
+        } else if (b0 == 0xFE && b1 == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        } else if (b0 == 0xFF && b1 == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    private static int bomLength(Charset bom) {
+        return StandardCharsets.UTF_8.equals(bom) ? 3 : 2;
+    }
+}
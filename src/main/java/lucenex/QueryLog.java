@@ -0,0 +1,151 @@
+package lucenex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Registro delle query eseguite, una per riga, usato per riscaldare il searcher all'avvio e dopo ogni riapertura
+ * con le query più recenti (vedi SearchOptions.setQueryLog). Le righe vengono aggiunte in fondo al file, e recent
+ * legge solo gli ultimi MAX_TAIL_BYTES byte, così il tempo di avvio non dipende dalla lunghezza del registro.
+ * Quando il file supera MAX_BYTES viene ridotto ai suoi ultimi MAX_TAIL_BYTES byte, i soli che verrebbero letti.
+ */
+final class QueryLog implements Closeable {
+    /** Byte letti al massimo da recent: migliaia di query, lette in pochi millisecondi. */
+    static final int MAX_TAIL_BYTES = 1024 * 1024;
+    /** Dimensione oltre la quale il registro viene ridotto alla coda letta da recent. */
+    static final long MAX_BYTES = 4L * MAX_TAIL_BYTES;
+
+    private final Path file;
+    private Writer out;
+    // caratteri scritti nel file, per decidere quando ridurlo; per le query ASCII sono i byte
+    private long size;
+    private boolean failed;
+
+    /**
+     * @param file il file del registro, creato se non esiste e ridotto se supera MAX_BYTES.
+     * @throws IOException se il file non può essere aperto.
+     */
+    QueryLog(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file) && Files.size(file) > MAX_BYTES) {
+            truncate(file);
+        }
+        this.size = Files.exists(file) ? Files.size(file) : 0;
+        this.out = open(file);
+    }
+
+    private static Writer open(Path file) throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Aggiunge una query al registro; la riga viene scritta sul file al prossimo flush.
+     * Un errore di scrittura non fa fallire la ricerca: viene segnalato una volta e la query non viene registrata.
+     */
+    synchronized void record(String query) {
+        try {
+            String line = query.replace('\n', ' ').replace('\r', ' ');
+            out.write(line);
+            out.write('\n');
+            size += line.length() + 1;
+        } catch (IOException e) {
+            error(e);
+        }
+    }
+
+    /**
+     * Scrive sul file le query registrate, e riduce il file se ha superato MAX_BYTES.
+     * Come record, non lancia eccezioni, così un errore del registro non impedisce la riapertura del searcher.
+     */
+    synchronized void flush() {
+        try {
+            out.flush();
+            if (size > MAX_BYTES) {
+                out.close();
+                truncate(file);
+                size = Files.size(file);
+                out = open(file);
+            }
+        } catch (IOException e) {
+            error(e);
+        }
+    }
+
+    private void error(IOException e) {
+        if (!failed) {
+            failed = true;
+            System.out.println("Errore nella scrittura del registro delle query: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    // sostituisce il file con le sue ultime righe complete entro MAX_TAIL_BYTES
+    private static void truncate(Path file) throws IOException {
+        byte[] tail = tail(file);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, tail);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // gli ultimi MAX_TAIL_BYTES byte del file, senza la prima riga se è incompleta
+    private static byte[] tail(Path file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+            long length = in.length();
+            int tail = (int) Math.min(length, MAX_TAIL_BYTES);
+            byte[] bytes = new byte[tail];
+            in.seek(length - tail);
+            in.readFully(bytes);
+            if (tail == length) {
+                return bytes;
+            }
+            int start = 0;
+            while (start < bytes.length && bytes[start] != '\n') {
+                start++;
+            }
+            return Arrays.copyOfRange(bytes, Math.min(start + 1, bytes.length), bytes.length);
+        }
+    }
+
+    /**
+     * Legge al massimo gli ultimi MAX_TAIL_BYTES byte del file: se contengono meno di max query distinte
+     * restituisce quelle che ci sono.
+     *
+     * @param file il file del registro.
+     * @param max  numero massimo di query.
+     * @return le ultime query distinte del registro, dalla più vecchia alla più recente;
+     * vuoto se il file non esiste.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    static List<String> recent(Path file, int max) throws IOException {
+        if (max <= 0 || !Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        String[] lines = new String(tail(file), StandardCharsets.UTF_8).split("\n");
+        LinkedHashSet<String> queries = new LinkedHashSet<>();
+        for (int i = lines.length - 1; i >= 0 && queries.size() < max; i--) {
+            if (!lines[i].trim().isEmpty()) {
+                queries.add(lines[i]);
+            }
+        }
+        List<String> recent = new ArrayList<>(queries);
+        Collections.reverse(recent);
+        return recent;
+    }
+}
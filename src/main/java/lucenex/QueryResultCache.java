@@ -0,0 +1,180 @@
+package lucenex;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache LRU dei risultati delle ricerche, limitata in memoria.
+ * La chiave è la query interpretata insieme al numero di risultati richiesti.
+ * Ogni risultato è valido solo per la versione del reader su cui è stato calcolato:
+ * quando arriva un reader più recente la cache viene svuotata, così dopo un commit non si
+ * restituiscono mai risultati vecchi.
+ * Può essere usata da più thread.
+ */
+public class QueryResultCache {
+    // stima della memoria occupata da una voce oltre alla query e ai path
+    private static final long ENTRY_OVERHEAD = 128;
+    private static final long HIT_OVERHEAD = 48;
+
+    /**
+     * Statistiche della cache.
+     */
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final int size;
+        public final long ramBytesUsed;
+
+        Stats(long hits, long misses, long evictions, int size, long ramBytesUsed) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.ramBytesUsed = ramBytesUsed;
+        }
+
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRatio=%.3f evictions=%d size=%d ramBytes=%d",
+                    hits, misses, hitRatio(), evictions, size, ramBytesUsed);
+        }
+    }
+
+    private static class Key {
+        final Query query;
+        final int topK;
+
+        Key(Query query, int topK) {
+            this.query = query;
+            this.topK = topK;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return topK == other.topK && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, topK);
+        }
+    }
+
+    private static class Entry {
+        final SearchResult result;
+        final long ramBytesUsed;
+
+        Entry(SearchResult result, long ramBytesUsed) {
+            this.result = result;
+            this.ramBytesUsed = ramBytesUsed;
+        }
+    }
+
+    private final long maxRamBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long readerVersion = -1;
+    private long ramBytesUsed;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxRamBytes memoria massima occupata dai risultati in cache.
+     */
+    public QueryResultCache(long maxRamBytes) {
+        this.maxRamBytes = maxRamBytes;
+    }
+
+    /**
+     * @param readerVersion la versione del reader su cui si sta cercando.
+     * @param query         la query interpretata.
+     * @param topK          il numero di risultati richiesti.
+     * @return il risultato in cache, oppure null.
+     */
+    public synchronized SearchResult get(long readerVersion, Query query, int topK) {
+        if (readerVersion > this.readerVersion) {
+            invalidate(readerVersion);
+        }
+        Entry entry = readerVersion == this.readerVersion ? entries.get(new Key(query, topK)) : null;
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * Aggiunge un risultato calcolato sul reader con la versione indicata.
+     * I risultati di reader più vecchi di quello corrente vengono ignorati.
+     */
+    public synchronized void put(long readerVersion, Query query, int topK, SearchResult result) {
+        if (readerVersion > this.readerVersion) {
+            invalidate(readerVersion);
+        } else if (readerVersion < this.readerVersion) {
+            return;
+        }
+        long size = ramBytesUsed(query, result);
+        if (size > maxRamBytes) {
+            return;
+        }
+        Entry previous = entries.put(new Key(query, topK), new Entry(result, size));
+        ramBytesUsed += size - (previous == null ? 0 : previous.ramBytesUsed);
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (ramBytesUsed > maxRamBytes && it.hasNext()) {
+            ramBytesUsed -= it.next().ramBytesUsed;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private void invalidate(long newReaderVersion) {
+        entries.clear();
+        ramBytesUsed = 0;
+        readerVersion = newReaderVersion;
+    }
+
+    private static long ramBytesUsed(Query query, SearchResult result) {
+        long size = ENTRY_OVERHEAD + RamUsageEstimator.sizeOf(query);
+        for (SearchResult.Hit hit : result.hits) {
+            size += HIT_OVERHEAD + RamUsageEstimator.sizeOf(hit.path)
+                    + (hit.snippet == null ? 0 : RamUsageEstimator.sizeOf(hit.snippet));
+            for (String copy : hit.copies) {
+                size += RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.sizeOf(copy);
+            }
+        }
+        if (result.facets != null) {
+            size += result.facets.ramBytesUsed();
+        }
+        return size;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, entries.size(), ramBytesUsed);
+    }
+
+    /**
+     * Svuota la cache e ne azzera le statistiche.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        ramBytesUsed = 0;
+        hits = misses = evictions = 0;
+    }
+}
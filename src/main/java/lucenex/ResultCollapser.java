@@ -0,0 +1,175 @@
+package lucenex;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Raggruppa i risultati di una ricerca, tenendo di ogni gruppo il primo, cioè quello con lo score più alto
+ * (o il primo nell'ordine della ricerca, vedi SearchOptions.setSort):
+ * i passaggi di un file diviso in passaggi, e con un indice creato con dedup i file con lo stesso hash
+ * e i quasi duplicati, le cui firme SimHash differiscono di al massimo maxDistance bit.
+ * I valori vengono letti dai DocValues.
+ */
+final class ResultCollapser {
+    private final int maxDistance;
+
+    /**
+     * @param maxDistance numero massimo di bit diversi tra le firme di due quasi duplicati; 0 per raggruppare
+     *                    solo i file con lo stesso hash, -1 per non raggruppare i duplicati.
+     */
+    ResultCollapser(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return true se i risultati di reader possono avere gruppi, cioè se l'indice ha file divisi in passaggi
+     * o è stato creato con dedup.
+     */
+    boolean isNeeded(IndexReader reader) {
+        return hasField(reader, TextFileIndexer.PASSAGGIO) || (maxDistance >= 0 && isDeduplicated(reader));
+    }
+
+    /**
+     * Tiene solo il primo risultato di ogni gruppo, spostando i risultati tenuti all'inizio degli array
+     * senza cambiarne l'ordine.
+     *
+     * @param hits  i risultati, in ordine di score o nell'ordine della ricerca.
+     * @param paths i path dei risultati.
+     * @param max   numero massimo di risultati da tenere.
+     * @return il numero di risultati tenuti.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    int collapse(IndexReader reader, ScoreDoc[] hits, String[] paths, int max) throws IOException {
+        boolean duplicates = maxDistance >= 0 && isDeduplicated(reader);
+        List<LeafReaderContext> leaves = reader.leaves();
+        Set<String> seenPaths = new HashSet<>();
+        Set<String> seenHashes = new HashSet<>();
+        long[] signatures = new long[Math.min(max, hits.length)];
+        int n = 0;
+        for (int i = 0; i < hits.length && n < max; i++) {
+            if (!seenPaths.add(paths[i])) {
+                continue;
+            }
+            long signature = 0;
+            if (duplicates) {
+                LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hits[i].doc, leaves));
+                int doc = hits[i].doc - leaf.docBase;
+                String hash = hash(leaf.reader(), doc);
+                if (hash != null && !seenHashes.add(hash)) {
+                    continue;
+                }
+                NumericDocValues simHash = DocValues.getNumeric(leaf.reader(), TextFileIndexer.SIMHASH);
+                signature = simHash.advanceExact(doc) ? simHash.longValue() : 0;
+                if (maxDistance > 0 && signature != 0 && isNear(signature, signatures, n)) {
+                    continue;
+                }
+            }
+            hits[n] = hits[i];
+            paths[n] = paths[i];
+            signatures[n] = signature;
+            n++;
+        }
+        return n;
+    }
+
+    private boolean isNear(long signature, long[] signatures, int n) {
+        for (int i = 0; i < n; i++) {
+            if (signatures[i] != 0 && SimHash.distance(signature, signatures[i]) <= maxDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param hits     i risultati.
+     * @param paths    i path dei risultati.
+     * @param maxCopies numero massimo di copie per risultato.
+     * @return per ogni risultato gli altri path con lo stesso contenuto, se l'indice è stato creato con dedup.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    static List<List<String>> copies(IndexReader reader, ScoreDoc[] hits, String[] paths, int maxCopies)
+            throws IOException {
+        List<List<String>> copies = new ArrayList<>(hits.length);
+        boolean deduplicated = hasField(reader, TextFileIndexer.DUPLICATO);
+        List<LeafReaderContext> leaves = reader.leaves();
+        for (int i = 0; i < hits.length; i++) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hits[i].doc, leaves));
+            String hash = deduplicated ? hash(leaf.reader(), hits[i].doc - leaf.docBase) : null;
+            copies.add(hash == null ? Collections.emptyList() : paths(reader, hash, paths[i], maxCopies));
+        }
+        return copies;
+    }
+
+    // i path dei documenti con un hash, escluso path
+    private static List<String> paths(IndexReader reader, String hash, String path, int max) throws IOException {
+        Set<String> paths = new LinkedHashSet<>();
+        BytesRef term = new BytesRef(hash);
+        for (LeafReaderContext context : reader.leaves()) {
+            LeafReader leaf = context.reader();
+            Terms terms = leaf.terms("hash");
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator();
+            if (!termsEnum.seekExact(term)) {
+                continue;
+            }
+            Bits liveDocs = leaf.getLiveDocs();
+            SortedDocValues values = DocValues.getSorted(leaf, "path");
+            PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if ((liveDocs == null || liveDocs.get(doc)) && values.advanceExact(doc)) {
+                    String copy = values.lookupOrd(values.ordValue()).utf8ToString();
+                    if (!copy.equals(path)) {
+                        paths.add(copy);
+                        if (paths.size() == max) {
+                            return new ArrayList<>(paths);
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(paths);
+    }
+
+    private static String hash(LeafReader leaf, int doc) throws IOException {
+        BinaryDocValues hash = DocValues.getBinary(leaf, "hash");
+        return hash.advanceExact(doc) ? hash.binaryValue().utf8ToString() : null;
+    }
+
+    // un indice creato con dedup ha le firme SimHash, o almeno le copie se ha solo file divisi in passaggi
+    private static boolean isDeduplicated(IndexReader reader) {
+        return hasField(reader, TextFileIndexer.SIMHASH) || hasField(reader, TextFileIndexer.DUPLICATO);
+    }
+
+    private static boolean hasField(IndexReader reader, String field) {
+        for (LeafReaderContext leaf : reader.leaves()) {
+            if (leaf.reader().getFieldInfos().fieldInfo(field) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
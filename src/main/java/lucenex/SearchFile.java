@@ -1,79 +1,94 @@
 package lucenex;
 
-import org.apache.lucene.analysis.en.EnglishAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopScoreDocCollector;
-import org.apache.lucene.store.FSDirectory;
-
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.List;
 
 /**
- * Questo programma esegue una ricerca su un indice creato con TextFileIndexer
+ * Questo programma esegue una ricerca su un indice creato con TextFileIndexer.
+ * Senza opzioni legge le query da console; con --port=N avvia un server HTTP
+ * che risponde a più query contemporaneamente (vedi SearchServer).
+ * Una riga che inizia con ? chiede i nomi dei file che completano il prefisso che segue.
  */
 
 public class SearchFile {
-    private static final EnglishAnalyzer analyzer = new EnglishAnalyzer();
-
-    public static void main(String[] args) throws IOException {
-        // Cartella dove è stato creato l'indice
-        String indexLocation = "tmp/index";
 
-        // Apre l'indice
-        IndexReader reader = DirectoryReader.open(FSDirectory.open(new File(indexLocation).toPath()));
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SearchOptions options = SearchOptions.parse(args);
 
-        // Crea un oggetto per la ricerca
-        IndexSearcher searcher = new IndexSearcher(reader);
+        // Apre l'indice, che viene riaperto periodicamente per vedere i nuovi commit
+        SearchService service = new SearchService(options);
+        // il servizio è pronto dopo aver aperto l'indice e averlo riscaldato con le query recenti del registro
+        System.out.println("Indice pronto in " + service.getReadyNanos() / 1_000_000 + " millisecondi"
+                + (service.getNumWarmQueries() > 0
+                ? " (riscaldato con " + service.getNumWarmQueries() + " query)" : ""));
 
-        // Oggetto per la raccolta dei risultati
-        TopScoreDocCollector collector;
+        if (options.getPort() > 0) {
+            SearchServer server = new SearchServer(service, options);
+            System.out.println("Server di ricerca in ascolto su http://localhost:" + server.getPort() + "/search?q=");
+            Thread.currentThread().join();
+        }
 
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
         String s = "";
-        long startTime, endTime;
-        Query q;
 
         // Ciclo di ricerca. Termina quando viene inserita la stringa "q"
         while (!s.equalsIgnoreCase("q")) {
             try {
-                // collector viene inizializzato con il numero massimo di risultati da restituire
-                // si inizializza ogni ciclo per evitare problemi con i risultati della ricerca precedente
-                collector = TopScoreDocCollector.create(10, 1000);
-
-                System.out.println("Inserire la query di ricerca: (q per uscire)");
+                System.out.println("Inserire la query di ricerca: (?prefisso per completare un nome, q per uscire)");
                 s = br.readLine();
-                if (s.equalsIgnoreCase("q")) {
+                if (s == null || s.equalsIgnoreCase("q")) {
                     break;
                 }
+                if (s.startsWith("?")) {
+                    long startTime = System.nanoTime();
+                    List<FileNameSuggester.Suggestion> suggestions = service.suggest(s.substring(1));
+                    System.out.println(suggestions.size() + " suggerimenti in "
+                            + (System.nanoTime() - startTime) / 1000 + " microsecondi:");
+                    for (FileNameSuggester.Suggestion suggestion : suggestions) {
+                        System.out.println(suggestion.name + " (" + suggestion.count + " file)");
+                    }
+                    System.out.println();
+                    continue;
+                }
 
-                // Crea un oggetto MultiFieldQueryParser per la ricerca
-                // Il primo parametro sono i campi su cui cercare
-                // Il secondo parametro è l'oggetto Analyzer
-                q = new MultiFieldQueryParser(new String[] {"contenuto", "nome"}, analyzer).parse(s);
-
-                startTime = System.nanoTime();
-                // Esegue la ricerca ed i risultati vengono salvati in collector
-                searcher.search(q, collector);
-                ScoreDoc[] hits = collector.topDocs().scoreDocs;
+                // Esegue la ricerca con un MultiFieldQueryParser sui campi contenuto e nome
+                SearchResult result = service.search(s);
 
-                endTime = System.nanoTime();
                 // Stampa i risultati
-                System.out.println("Trovati " + collector.getTotalHits() + " hits in "+ (endTime - startTime)/1000 + " microsecondi.");
-                if (hits.length>0){
-                    System.out.println("Primi " + hits.length + " risultati in ordine di score:");
-                    for (int i = 0; i < hits.length; ++i) {
-                        int docId = hits[i].doc;
-                        Document d = searcher.doc(docId);
-                        System.out.println((i + 1) + ". " + d.get("path") + " score=" + hits[i].score);
+                System.out.println("Trovati " + result.totalHits + (result.totalHitsIsLowerBound ? "+" : "")
+                        + " hits in "+ result.elapsedNanos/1000 + " microsecondi."
+                        + (result.timedOut ? " (risultati parziali, timeout)" : "")
+                        + (result.cached ? " (dalla cache)" : ""));
+                if (!result.hits.isEmpty()){
+                    System.out.println("Primi " + result.hits.size() + " risultati in ordine di "
+                            + options.getSort().getDescription() + ":");
+                    for (int i = 0; i < result.hits.size(); ++i) {
+                        SearchResult.Hit hit = result.hits.get(i);
+                        // con un ordine diverso dallo score, lo score non viene calcolato
+                        System.out.println((i + 1) + ". " + hit.path
+                                + (Float.isNaN(hit.score) ? "" : " score=" + hit.score));
+                        if (hit.snippet != null) {
+                            System.out.println("   " + hit.snippet);
+                        }
+                        if (!hit.copies.isEmpty()) {
+                            System.out.println("   stesso contenuto: " + String.join(", ", hit.copies));
+                        }
+                    }
+                }
+                if (result.facets != null && result.facets.getDocuments() > 0) {
+                    FacetCounts facets = result.facets;
+                    String common = facets.commonDirectory();
+                    List<FacetCounts.Entry> subdirectories = facets.subdirectories(common, options.getFacets());
+                    if (!subdirectories.isEmpty()) {
+                        System.out.println("Cartelle" + (common == null ? "" : " in " + common) + ": "
+                                + join(subdirectories));
+                    } else if (common != null) {
+                        System.out.println("Cartella: " + common);
                     }
+                    System.out.println("Estensioni: "
+                            + join(facets.top(TextFileIndexer.ESTENSIONE, options.getFacets())));
                 }
                 System.out.println();
 
@@ -81,7 +96,14 @@ public class SearchFile {
                 System.out.println("Errore nella ricerca di " + s + " : " + e.getMessage());
             }
         }
+        service.close();
     }
 
+    private static String join(List<FacetCounts.Entry> entries) {
+        StringBuilder sb = new StringBuilder();
+        for (FacetCounts.Entry e : entries) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(e);
+        }
+        return sb.toString();
+    }
 }
-
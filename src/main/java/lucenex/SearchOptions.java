@@ -0,0 +1,438 @@
+package lucenex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Opzioni di configurazione di SearchFile.
+ * Si possono impostare da codice oppure da riga di comando con argomenti della forma --nome=valore.
+ */
+public class SearchOptions {
+    private String indexDir = "tmp/index";
+    private int topK = 10;
+    private int port = 0;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 64;
+    private long timeoutMillis = 1000;
+    private long refreshMillis = 1000;
+    private long cacheRamBytes = 32L * 1024 * 1024;
+    private int sliceThreads = 0;
+    private int sliceMaxDocs = 250_000;
+    private int sliceMaxSegments = 5;
+    private long metricsIntervalSeconds = 0;
+    private SimilarityMode similarity = SimilarityMode.BM25;
+    private boolean suggest = true;
+    private boolean snippets = false;
+    private long snippetBudgetMillis = 20;
+    private int nearDuplicateBits = 3;
+    private int facets = 0;
+    private SortMode sort = SortMode.SCORE;
+    private int totalHitsThreshold = 1000;
+    private boolean mmap = false;
+    private Set<String> preload = Collections.emptySet();
+    private String queryLog = null;
+    private int warmQueries = 100;
+
+    public String getIndexDir() {
+        return indexDir;
+    }
+
+    public SearchOptions setIndexDir(String indexDir) {
+        this.indexDir = indexDir;
+        return this;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    /**
+     * @param topK numero massimo di risultati restituiti per ogni query.
+     */
+    public SearchOptions setTopK(int topK) {
+        this.topK = topK;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param port porta HTTP su cui servire le query; 0 per la ricerca interattiva da console.
+     */
+    public SearchOptions setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads numero di query eseguite contemporaneamente dal server.
+     */
+    public SearchOptions setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity numero di query in attesa oltre le quali il server risponde 503.
+     */
+    public SearchOptions setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis tempo massimo di esecuzione di una query, dopo il quale si restituiscono
+     *                      i risultati parziali.
+     */
+    public SearchOptions setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public long getRefreshMillis() {
+        return refreshMillis;
+    }
+
+    /**
+     * @param refreshMillis ogni quanto controllare se l'indice è stato modificato da TextFileIndexer.
+     */
+    public SearchOptions setRefreshMillis(long refreshMillis) {
+        this.refreshMillis = refreshMillis;
+        return this;
+    }
+
+    public long getCacheRamBytes() {
+        return cacheRamBytes;
+    }
+
+    /**
+     * @param cacheRamBytes memoria massima della cache dei risultati; 0 per disattivarla.
+     */
+    public SearchOptions setCacheRamBytes(long cacheRamBytes) {
+        this.cacheRamBytes = cacheRamBytes;
+        return this;
+    }
+
+    public int getSliceThreads() {
+        return sliceThreads;
+    }
+
+    /**
+     * @param sliceThreads thread con cui cercare in parallelo i segmenti di una stessa query;
+     *                     0 per cercare tutti i segmenti nel thread della query.
+     */
+    public SearchOptions setSliceThreads(int sliceThreads) {
+        this.sliceThreads = sliceThreads;
+        return this;
+    }
+
+    public int getSliceMaxDocs() {
+        return sliceMaxDocs;
+    }
+
+    /**
+     * @param sliceMaxDocs numero massimo di documenti in una slice.
+     */
+    public SearchOptions setSliceMaxDocs(int sliceMaxDocs) {
+        this.sliceMaxDocs = sliceMaxDocs;
+        return this;
+    }
+
+    public int getSliceMaxSegments() {
+        return sliceMaxSegments;
+    }
+
+    /**
+     * @param sliceMaxSegments numero massimo di segmenti in una slice.
+     */
+    public SearchOptions setSliceMaxSegments(int sliceMaxSegments) {
+        this.sliceMaxSegments = sliceMaxSegments;
+        return this;
+    }
+
+    public long getMetricsIntervalSeconds() {
+        return metricsIntervalSeconds;
+    }
+
+    /**
+     * @param metricsIntervalSeconds ogni quanti secondi stampare le metriche delle ricerche; 0 per non stamparle.
+     */
+    public SearchOptions setMetricsIntervalSeconds(long metricsIntervalSeconds) {
+        this.metricsIntervalSeconds = metricsIntervalSeconds;
+        return this;
+    }
+
+    public SimilarityMode getSimilarity() {
+        return similarity;
+    }
+
+    /**
+     * @param similarity la funzione di ranking.
+     */
+    public SearchOptions setSimilarity(SimilarityMode similarity) {
+        this.similarity = similarity;
+        return this;
+    }
+
+    public boolean isSuggest() {
+        return suggest;
+    }
+
+    /**
+     * @param suggest se true viene costruito in memoria il suggester dei nomi dei file, ricostruito a ogni
+     *                riapertura dell'indice.
+     */
+    public SearchOptions setSuggest(boolean suggest) {
+        this.suggest = suggest;
+        return this;
+    }
+
+    public boolean isSnippets() {
+        return snippets;
+    }
+
+    /**
+     * @param snippets se true ogni risultato ha uno snippet del contenuto con i termini della query evidenziati;
+     *                 richiede un indice creato da TextFileIndexer con --snippets=true.
+     */
+    public SearchOptions setSnippets(boolean snippets) {
+        this.snippets = snippets;
+        return this;
+    }
+
+    public long getSnippetBudgetMillis() {
+        return snippetBudgetMillis;
+    }
+
+    /**
+     * @param snippetBudgetMillis tempo massimo per creare gli snippet di una ricerca; i risultati oltre
+     *                            il limite restano senza snippet. 0 per non avere limiti.
+     */
+    public SearchOptions setSnippetBudgetMillis(long snippetBudgetMillis) {
+        this.snippetBudgetMillis = snippetBudgetMillis;
+        return this;
+    }
+
+    public int getNearDuplicateBits() {
+        return nearDuplicateBits;
+    }
+
+    /**
+     * @param nearDuplicateBits con un indice creato da TextFileIndexer con --dedup=true, due risultati le cui firme
+     *                          SimHash differiscono di al massimo questo numero di bit (su 64) sono quasi duplicati
+     *                          e compare solo il primo; 0 per raggruppare solo i file con lo stesso contenuto,
+     *                          -1 per non raggruppare i duplicati.
+     */
+    public SearchOptions setNearDuplicateBits(int nearDuplicateBits) {
+        this.nearDuplicateBits = nearDuplicateBits;
+        return this;
+    }
+
+    public int getFacets() {
+        return facets;
+    }
+
+    /**
+     * @param facets numero di cartelle e di estensioni da mostrare con il numero di risultati di ciascuna,
+     *               contati nella stessa raccolta dei risultati (vedi FacetCounts); 0 per non contarli.
+     */
+    public SearchOptions setFacets(int facets) {
+        this.facets = facets;
+        return this;
+    }
+
+    public SortMode getSort() {
+        return sort;
+    }
+
+    /**
+     * @param sort ordine dei risultati; con MTIME o PATH su un indice ordinato allo stesso modo
+     *             (vedi IndexerOptions.setIndexSort) la ricerca si ferma dopo i primi topK risultati di ogni segmento,
+     *             una volta contati totalHitsThreshold hits.
+     */
+    public SearchOptions setSort(SortMode sort) {
+        this.sort = sort;
+        return this;
+    }
+
+    public int getTotalHitsThreshold() {
+        return totalHitsThreshold;
+    }
+
+    /**
+     * @param totalHitsThreshold numero di hits contati esattamente: oltre questo numero totalHits è un limite
+     *                           inferiore e la ricerca può saltare i documenti che non entrano nei primi topK;
+     *                           Integer.MAX_VALUE per contarli sempre tutti.
+     */
+    public SearchOptions setTotalHitsThreshold(int totalHitsThreshold) {
+        this.totalHitsThreshold = totalHitsThreshold;
+        return this;
+    }
+
+    public boolean isMmap() {
+        return mmap;
+    }
+
+    /**
+     * @param mmap se true l'indice viene aperto con MMapDirectory, invece della Directory scelta da FSDirectory.open
+     *             per il sistema.
+     */
+    public SearchOptions setMmap(boolean mmap) {
+        this.mmap = mmap;
+        return this;
+    }
+
+    public Set<String> getPreload() {
+        return preload;
+    }
+
+    /**
+     * @param preload estensioni dei file dell'indice da caricare in memoria quando vengono aperti, ad esempio
+     *                tim, tip e tmd (dizionario dei termini), doc e pos (postings), nvd e nvm (norme), cfs (segmenti
+     *                piccoli, in un file composto); con almeno un'estensione l'indice viene aperto con MMapDirectory.
+     */
+    public SearchOptions setPreload(Set<String> preload) {
+        this.preload = Collections.unmodifiableSet(new HashSet<>(preload));
+        return this;
+    }
+
+    public String getQueryLog() {
+        return queryLog;
+    }
+
+    /**
+     * @param queryLog file in cui registrare le query, da cui vengono lette le query più recenti per riscaldare
+     *                 il searcher prima che il servizio sia pronto e a ogni riapertura; null per non registrarle.
+     */
+    public SearchOptions setQueryLog(String queryLog) {
+        this.queryLog = queryLog;
+        return this;
+    }
+
+    public int getWarmQueries() {
+        return warmQueries;
+    }
+
+    /**
+     * @param warmQueries numero di query distinte più recenti del registro eseguite per riscaldare il searcher;
+     *                    0 per non riscaldarlo.
+     */
+    public SearchOptions setWarmQueries(int warmQueries) {
+        this.warmQueries = warmQueries;
+        return this;
+    }
+
+    /**
+     * Legge le opzioni dagli argomenti della riga di comando.
+     *
+     * @param args argomenti della forma --nome=valore.
+     * @return le opzioni lette.
+     * @throws IllegalArgumentException se un argomento non è riconosciuto.
+     */
+    public static SearchOptions parse(String[] args) {
+        SearchOptions options = new SearchOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Argomento non valido: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "index":
+                    options.setIndexDir(value);
+                    break;
+                case "k":
+                    options.setTopK(Integer.parseInt(value));
+                    break;
+                case "port":
+                    options.setPort(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    options.setNumThreads(Integer.parseInt(value));
+                    break;
+                case "queue":
+                    options.setQueueCapacity(Integer.parseInt(value));
+                    break;
+                case "timeout":
+                    options.setTimeoutMillis(Long.parseLong(value));
+                    break;
+                case "refresh":
+                    options.setRefreshMillis(Long.parseLong(value));
+                    break;
+                case "cache-mb":
+                    options.setCacheRamBytes(Long.parseLong(value) * 1024 * 1024);
+                    break;
+                case "slice-threads":
+                    options.setSliceThreads(Integer.parseInt(value));
+                    break;
+                case "slice-docs":
+                    options.setSliceMaxDocs(Integer.parseInt(value));
+                    break;
+                case "slice-segments":
+                    options.setSliceMaxSegments(Integer.parseInt(value));
+                    break;
+                case "metrics":
+                    options.setMetricsIntervalSeconds(Long.parseLong(value));
+                    break;
+                case "similarity":
+                    options.setSimilarity(SimilarityMode.fromName(value));
+                    break;
+                case "suggest":
+                    options.setSuggest(Boolean.parseBoolean(value));
+                    break;
+                case "snippets":
+                    options.setSnippets(Boolean.parseBoolean(value));
+                    break;
+                case "snippet-budget":
+                    options.setSnippetBudgetMillis(Long.parseLong(value));
+                    break;
+                case "near-duplicates":
+                    options.setNearDuplicateBits(Integer.parseInt(value));
+                    break;
+                case "facets":
+                    options.setFacets(Integer.parseInt(value));
+                    break;
+                case "sort":
+                    options.setSort(SortMode.fromName(value));
+                    break;
+                case "hits-threshold":
+                    options.setTotalHitsThreshold(value.equalsIgnoreCase("exact")
+                            ? Integer.MAX_VALUE : Integer.parseInt(value));
+                    break;
+                case "mmap":
+                    options.setMmap(Boolean.parseBoolean(value));
+                    break;
+                case "preload":
+                    options.setPreload(new HashSet<>(Arrays.asList(value.split(","))));
+                    break;
+                case "query-log":
+                    // --query-log= senza file non registra le query
+                    options.setQueryLog(value.isEmpty() ? null : value);
+                    break;
+                case "warm-queries":
+                    options.setWarmQueries(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opzione sconosciuta: " + name);
+            }
+        }
+        return options;
+    }
+}
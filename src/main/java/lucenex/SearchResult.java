@@ -0,0 +1,76 @@
+package lucenex;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Il risultato di una ricerca: i primi documenti trovati e il numero totale di hits.
+ */
+public class SearchResult {
+    /**
+     * Un documento trovato.
+     */
+    public static class Hit {
+        public final String path;
+        public final float score;
+        /** estratto del contenuto con i termini della query tra &lt;b&gt; e &lt;/b&gt;, oppure null. */
+        public final String snippet;
+        /** gli altri path con lo stesso contenuto, indicizzato una volta sola (vedi IndexerOptions.setDedup). */
+        public final List<String> copies;
+
+        public Hit(String path, float score) {
+            this(path, score, null);
+        }
+
+        public Hit(String path, float score, String snippet) {
+            this(path, score, snippet, Collections.emptyList());
+        }
+
+        public Hit(String path, float score, String snippet, List<String> copies) {
+            this.path = path;
+            this.score = score;
+            this.snippet = snippet;
+            this.copies = copies;
+        }
+    }
+
+    public final List<Hit> hits;
+    public final long totalHits;
+    /** true se totalHits è solo un limite inferiore. */
+    public final boolean totalHitsIsLowerBound;
+    /** true se la ricerca è stata interrotta per timeout e i risultati sono parziali. */
+    public final boolean timedOut;
+    public final long elapsedNanos;
+    /** true se il risultato proviene dalla QueryResultCache. */
+    public final boolean cached;
+    /** numero di risultati per cartella e per estensione, oppure null se non richiesto (vedi SearchOptions.setFacets). */
+    public final FacetCounts facets;
+
+    public SearchResult(List<Hit> hits, long totalHits, boolean totalHitsIsLowerBound, boolean timedOut,
+                        long elapsedNanos) {
+        this(hits, totalHits, totalHitsIsLowerBound, timedOut, elapsedNanos, null);
+    }
+
+    public SearchResult(List<Hit> hits, long totalHits, boolean totalHitsIsLowerBound, boolean timedOut,
+                        long elapsedNanos, FacetCounts facets) {
+        this(hits, totalHits, totalHitsIsLowerBound, timedOut, elapsedNanos, facets, false);
+    }
+
+    private SearchResult(List<Hit> hits, long totalHits, boolean totalHitsIsLowerBound, boolean timedOut,
+                         long elapsedNanos, FacetCounts facets, boolean cached) {
+        this.hits = Collections.unmodifiableList(hits);
+        this.totalHits = totalHits;
+        this.totalHitsIsLowerBound = totalHitsIsLowerBound;
+        this.timedOut = timedOut;
+        this.elapsedNanos = elapsedNanos;
+        this.facets = facets;
+        this.cached = cached;
+    }
+
+    /**
+     * @return lo stesso risultato letto dalla cache in elapsedNanos nanosecondi.
+     */
+    SearchResult fromCache(long elapsedNanos) {
+        return new SearchResult(hits, totalHits, totalHitsIsLowerBound, timedOut, elapsedNanos, facets, true);
+    }
+}
@@ -0,0 +1,237 @@
+package lucenex;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Server HTTP che risponde alle ricerche su GET /search?q=query (ristrette con dir=cartella e ext=estensione,
+ * vedi SearchService.drillDown), ai suggerimenti dei nomi su
+ * GET /suggest?q=prefisso e alle metriche su GET /metrics (o GET /stats).
+ * Le query vengono eseguite da un numero fisso di thread; oltre queueCapacity richieste in attesa
+ * il server risponde 503, e una query che non termina entro il timeout riceve 504.
+ *
+ * La risposta è testo, una riga di intestazione seguita da una riga per risultato:
+ * <pre>
+ * hits	&lt;totale&gt;	&lt;microsecondi&gt;
+ * 1	&lt;path&gt;	&lt;score&gt;	[&lt;snippet&gt;]
+ * </pre>
+ * Lo snippet c'è solo se sono attivi gli snippet ed è stato creato entro il tempo a disposizione.
+ * Con --facets seguono i conteggi delle sottocartelle della cartella comune a tutti i risultati e delle estensioni:
+ * <pre>
+ * facet	cartella	&lt;cartella&gt;	&lt;risultati&gt;
+ * facet	estensione	&lt;estensione&gt;	&lt;risultati&gt;
+ * </pre>
+ */
+public class SearchServer implements Closeable {
+    // margine oltre il timeout della query prima di abbandonare la richiesta
+    private static final long TIMEOUT_GRACE_MILLIS = 100;
+    // thread delle connessioni oltre quelli delle richieste ammesse, per rispondere 503 e a /suggest e /stats
+    private static final int SPARE_CONNECTION_THREADS = 4;
+
+    private final SearchService service;
+    private final SearchOptions options;
+    private final HttpServer server;
+    private final ExecutorService connectionExecutor;
+    private final ExecutorService searchExecutor;
+    private final Semaphore inFlight;
+
+    /**
+     * Avvia il server sulla porta indicata nelle opzioni, in ascolto solo sull'interfaccia locale.
+     *
+     * @param service il servizio che esegue le ricerche.
+     * @param options le opzioni di ricerca.
+     * @throws IOException se la porta non è disponibile.
+     */
+    public SearchServer(SearchService service, SearchOptions options) throws IOException {
+        this.service = service;
+        this.options = options;
+        this.inFlight = new Semaphore(options.getNumThreads() + options.getQueueCapacity());
+        this.searchExecutor = Executors.newFixedThreadPool(options.getNumThreads(), r -> {
+            Thread t = new Thread(r, "search-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        // ogni richiesta ammessa tiene occupato un thread delle connessioni finché la ricerca non termina,
+        // quindi il numero di thread è limitato come le richieste ammesse dal semaforo
+        int connectionThreads = options.getNumThreads() + options.getQueueCapacity() + SPARE_CONNECTION_THREADS;
+        this.connectionExecutor = Executors.newFixedThreadPool(connectionThreads, r -> {
+            Thread t = new Thread(r, "search-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.getPort()), 0);
+        server.createContext("/search", this::handle);
+        server.createContext("/suggest", this::handleSuggest);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/metrics", this::handleStats);
+        server.setExecutor(connectionExecutor);
+        server.start();
+    }
+
+    /**
+     * @return la porta su cui il server è in ascolto.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = parseQueryString(exchange.getRequestURI().getRawQuery());
+            String q = params.get("q");
+            if (q == null || q.trim().isEmpty()) {
+                send(exchange, 400, "parametro q mancante\n");
+                return;
+            }
+            if (!inFlight.tryAcquire()) {
+                service.getMetrics().counter("server.rejected").increment();
+                send(exchange, 503, "troppe richieste in attesa\n");
+                return;
+            }
+            try {
+                Future<SearchResult> future = searchExecutor.submit(() ->
+                        service.search(SearchService.drillDown(service.parse(q), params.get("dir"), params.get("ext"))));
+                SearchResult result;
+                try {
+                    // senza timeout la query può durare quanto serve; con il timeout è il QueryTimeout del searcher
+                    // a terminarla, e l'attesa oltre il margine è solo una protezione
+                    result = options.getTimeoutMillis() > 0
+                            ? future.get(options.getTimeoutMillis() + TIMEOUT_GRACE_MILLIS, TimeUnit.MILLISECONDS)
+                            : future.get();
+                } catch (TimeoutException e) {
+                    // niente interrupt: interrompere un thread durante una lettura NIO chiude i canali
+                    // della Directory condivisa da tutte le ricerche
+                    future.cancel(false);
+                    service.getMetrics().counter("server.timeouts").increment();
+                    send(exchange, 504, "timeout\n");
+                    return;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof ParseException) {
+                        send(exchange, 400, "query non valida: " + e.getCause().getMessage() + "\n");
+                    } else {
+                        send(exchange, 500, "errore nella ricerca: " + e.getCause() + "\n");
+                    }
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    send(exchange, 503, "interrotto\n");
+                    return;
+                }
+                send(exchange, 200, format(result));
+            } finally {
+                inFlight.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // i suggerimenti sono letti da un FST in memoria e rispondono in pochi microsecondi,
+    // quindi non passano dalla coda delle ricerche
+    private void handleSuggest(HttpExchange exchange) throws IOException {
+        try {
+            String q = parseQueryString(exchange.getRequestURI().getRawQuery()).get("q");
+            if (q == null || q.isEmpty()) {
+                send(exchange, 400, "parametro q mancante\n");
+                return;
+            }
+            long startTime = System.nanoTime();
+            List<FileNameSuggester.Suggestion> suggestions = service.suggest(q);
+            StringBuilder sb = new StringBuilder();
+            sb.append("suggest\t").append(suggestions.size()).append('\t')
+                    .append((System.nanoTime() - startTime) / 1000).append('\n');
+            int i = 0;
+            for (FileNameSuggester.Suggestion suggestion : suggestions) {
+                sb.append(++i).append('\t').append(suggestion.name).append('\t').append(suggestion.count).append('\n');
+            }
+            send(exchange, 200, sb.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            send(exchange, 200, service.getMetrics().dump());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String format(SearchResult result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("hits\t").append(result.totalHits).append(result.totalHitsIsLowerBound ? "+" : "")
+                .append('\t').append(result.elapsedNanos / 1000)
+                .append(result.timedOut ? "\tparziale" : "").append('\n');
+        int i = 0;
+        for (SearchResult.Hit hit : result.hits) {
+            sb.append(++i).append('\t').append(hit.path).append('\t').append(hit.score);
+            if (hit.snippet != null) {
+                sb.append('\t').append(hit.snippet.replace('\t', ' '));
+            }
+            sb.append('\n');
+        }
+        if (result.facets != null) {
+            FacetCounts facets = result.facets;
+            for (FacetCounts.Entry e : facets.subdirectories(facets.commonDirectory(), options.getFacets())) {
+                sb.append("facet\t").append(TextFileIndexer.CARTELLA).append('\t').append(e.value)
+                        .append('\t').append(e.count).append('\n');
+            }
+            for (FacetCounts.Entry e : facets.top(TextFileIndexer.ESTENSIONE, options.getFacets())) {
+                sb.append("facet\t").append(TextFileIndexer.ESTENSIONE).append('\t').append(e.value)
+                        .append('\t').append(e.count).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static Map<String, String> parseQueryString(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        searchExecutor.shutdownNow();
+        connectionExecutor.shutdownNow();
+    }
+}
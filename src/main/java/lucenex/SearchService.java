@@ -0,0 +1,556 @@
+package lucenex;
+
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.QueryTimeoutImpl;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollectorManager;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Esegue ricerche sull'indice creato con TextFileIndexer. Può essere usato da più thread.
+ * Il searcher viene riaperto periodicamente, così le ricerche vedono i nuovi commit dell'indice.
+ * Se sliceThreads è maggiore di zero ogni query viene eseguita in parallelo sui gruppi di segmenti dell'indice.
+ * Se l'indice è diviso in shard ogni query viene eseguita in parallelo su tutti gli shard, con statistiche
+ * globali per lo score, e i risultati dei diversi shard vengono uniti in un unico top-k.
+ * Se l'indice contiene file divisi in passaggi i risultati sono raggruppati per file: ogni file compare una volta,
+ * con lo score (e lo snippet) del suo passaggio migliore, mentre totalHits conta i passaggi.
+ * Se l'indice è stato creato con dedup compaiono una volta anche i file con lo stesso contenuto, elencati come copie
+ * del risultato, e i quasi duplicati (vedi SearchOptions.setNearDuplicateBits).
+ * Se facets è maggiore di zero, nella stessa raccolta dei risultati si contano i risultati per cartella
+ * e per estensione (vedi FacetCounts); drillDown restringe poi la query a una cartella o a un'estensione.
+ * Con un registro delle query (vedi SearchOptions.setQueryLog) ogni nuovo searcher, all'avvio e a ogni riapertura,
+ * viene riscaldato con le query più recenti prima di essere usato.
+ */
+public class SearchService implements Closeable {
+    private static final EnglishAnalyzer analyzer = new EnglishAnalyzer();
+    private static final String[] FIELDS = {"contenuto", "nome"};
+    private static final DocValuesFetcher pathFetcher = new DocValuesFetcher("path");
+    private static final SnippetHighlighter highlighter = new SnippetHighlighter("contenuto", 200);
+    // numero massimo di copie mostrate per ogni risultato
+    private static final int MAX_COPIES = 10;
+    private static final String[] FACET_FIELDS = {TextFileIndexer.CARTELLA, TextFileIndexer.ESTENSIONE};
+
+    private final ReferenceManager<IndexSearcher> manager;
+    private final SearchOptions options;
+    private final Directory[] directories;
+    private final int numShards;
+    private final ScheduledExecutorService refresher;
+    private final QueryResultCache cache;
+    private final ExecutorService sliceExecutor;
+    private final Similarity similarity;
+    private final FileNameSuggester suggester;
+    private final ResultCollapser collapser;
+    private final QueryLog queryLog;
+    private final List<String> warmQueries;
+    private final long readyNanos;
+
+    private final Metrics metrics = new Metrics("search");
+    private final LatencyHistogram parseTime = metrics.histogram("parse");
+    private final LatencyHistogram rewriteTime = metrics.histogram("rewrite");
+    private final LatencyHistogram collectTime = metrics.histogram("collect");
+    private final LatencyHistogram searchTime = metrics.histogram("search");
+    private final LatencyHistogram fetchTime = metrics.histogram("fetch");
+    private final LatencyHistogram snippetTime = metrics.histogram("snippets");
+    private final LatencyHistogram totalTime = metrics.histogram("total");
+    private final LongAdder queries = metrics.counter("queries");
+    private final LongAdder totalHits = metrics.counter("hits");
+    private final LongAdder timeouts = metrics.counter("timeouts");
+    private final LatencyHistogram suggestTime = metrics.histogram("suggest");
+    private final LatencyHistogram suggestBuildTime = metrics.histogram("suggest.build");
+    private final LatencyHistogram warmTime = metrics.histogram("warm");
+    private final LongAdder warmedQueries = metrics.counter("warm.queries");
+
+    /**
+     * Apre l'indice indicato nelle opzioni e lo riapre ogni refreshMillis millisecondi.
+     * Se la cartella contiene gli shard creati da TextFileIndexer con --shards vengono aperti tutti.
+     * Con un registro delle query, il costruttore termina solo dopo aver riscaldato il searcher.
+     *
+     * @param options le opzioni di ricerca.
+     * @throws IOException se l'indice non può essere aperto.
+     */
+    public SearchService(SearchOptions options) throws IOException {
+        this(options, (IOFunction<SearcherFactory, ReferenceManager<IndexSearcher>>) null);
+    }
+
+    /**
+     * Cerca sui searcher di un manager già aperto, riaperti ogni refreshMillis millisecondi.
+     * Il manager viene chiuso insieme al servizio; i suoi searcher non vengono riscaldati.
+     *
+     * @param options le opzioni di ricerca; indexDir viene ignorato.
+     * @param manager il manager dei searcher, oppure null per aprire l'indice indicato nelle opzioni.
+     * @throws IOException se l'indice non può essere aperto.
+     */
+    SearchService(SearchOptions options, ReferenceManager<IndexSearcher> manager) throws IOException {
+        this(options, manager == null ? null : factory -> manager);
+    }
+
+    /**
+     * Cerca sui reader near-real-time di TextFileIndexer (vedi TextFileIndexer.newSearcherManager()),
+     * riaperti ogni refreshMillis millisecondi e riscaldati a ogni riapertura.
+     *
+     * @param options le opzioni di ricerca; indexDir viene ignorato.
+     * @param indexer l'indicizzatore.
+     * @throws IOException se l'indice non può essere aperto.
+     */
+    SearchService(SearchOptions options, TextFileIndexer indexer) throws IOException {
+        this(options, indexer::newSearcherManager);
+    }
+
+    private SearchService(SearchOptions options,
+                          IOFunction<SearcherFactory, ReferenceManager<IndexSearcher>> open) throws IOException {
+        long startTime = System.nanoTime();
+        this.options = options;
+        this.similarity = options.getSimilarity().newSimilarity();
+        this.collapser = new ResultCollapser(options.getNearDuplicateBits());
+        // le query più recenti vengono lette prima di aprire il registro, che poi registra quelle nuove
+        Path queryLogFile = options.getQueryLog() == null ? null : Paths.get(options.getQueryLog());
+        this.warmQueries = queryLogFile == null ? Collections.emptyList()
+                : QueryLog.recent(queryLogFile, options.getWarmQueries());
+        this.queryLog = queryLogFile == null ? null : new QueryLog(queryLogFile);
+        // la factory riscalda ogni nuovo searcher, all'apertura e a ogni riapertura, prima che venga usato
+        SearcherFactory factory = new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+                IndexSearcher searcher = super.newSearcher(reader, previousReader);
+                warm(searcher);
+                return searcher;
+            }
+        };
+        if (open != null) {
+            this.directories = new Directory[0];
+            this.manager = open.apply(factory);
+            this.numShards = manager instanceof ShardedSearcherManager
+                    ? ((ShardedSearcherManager) manager).getNumShards() : 0;
+        } else {
+            Path indexDir = new File(options.getIndexDir()).toPath();
+            this.numShards = Shards.count(indexDir);
+            if (numShards == 0) {
+                this.directories = new Directory[]{openDirectory(indexDir, options)};
+                this.manager = new SearcherManager(directories[0], factory);
+            } else {
+                this.directories = new Directory[numShards];
+                for (int i = 0; i < numShards; i++) {
+                    directories[i] = openDirectory(Shards.shardDir(indexDir, i), options);
+                }
+                this.manager = new ShardedSearcherManager(directories, factory);
+            }
+        }
+        this.cache = options.getCacheRamBytes() > 0 ? new QueryResultCache(options.getCacheRamBytes()) : null;
+        // con gli shard, se non è indicato un numero di thread, si usa un thread per shard
+        int sliceThreads = options.getSliceThreads() > 0 ? options.getSliceThreads() : numShards;
+        this.sliceExecutor = sliceThreads > 0
+                ? Executors.newFixedThreadPool(sliceThreads, r -> {
+                    Thread t = new Thread(r, "search-slice");
+                    t.setDaemon(true);
+                    return t;
+                })
+                : null;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "searcher-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, options.getRefreshMillis(), options.getRefreshMillis(),
+                TimeUnit.MILLISECONDS);
+
+        // il suggester viene ricostruito dopo ogni riapertura che trova nuovi commit (o modifiche near-real-time)
+        if (options.isSuggest()) {
+            suggester = new FileNameSuggester(TextFileIndexer.createNomeAnalyzer());
+            buildSuggester();
+            this.manager.addListener(new ReferenceManager.RefreshListener() {
+                @Override
+                public void beforeRefresh() {
+                }
+
+                @Override
+                public void afterRefresh(boolean didRefresh) throws IOException {
+                    if (didRefresh) {
+                        buildSuggester();
+                    }
+                }
+            });
+            metrics.gauge("suggest.ramBytes", suggester::ramBytesUsed);
+        } else {
+            suggester = null;
+        }
+
+        if (cache != null) {
+            metrics.gauge("cache.hits", () -> cache.getStats().hits);
+            metrics.gauge("cache.misses", () -> cache.getStats().misses);
+            metrics.gauge("cache.hitRatio", () -> cache.getStats().hitRatio());
+            metrics.gauge("cache.ramBytes", () -> cache.getStats().ramBytesUsed);
+        }
+        readyNanos = System.nanoTime() - startTime;
+        metrics.gauge("ready.millis", () -> TimeUnit.NANOSECONDS.toMillis(readyNanos));
+        metrics.register();
+        if (options.getMetricsIntervalSeconds() > 0) {
+            metrics.startDump(options.getMetricsIntervalSeconds(), System.out);
+        }
+    }
+
+    private void refresh() {
+        if (queryLog != null) {
+            queryLog.flush();
+        }
+        try {
+            manager.maybeRefresh();
+        } catch (IOException e) {
+            System.out.println("Errore nella riapertura dell'indice: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Interpreta una query con la sintassi di MultiFieldQueryParser sui campi contenuto e nome.
+     *
+     * @param queryString la query.
+     * @return la query interpretata.
+     * @throws ParseException se la query non è valida.
+     */
+    public Query parse(String queryString) throws ParseException {
+        long startTime = System.nanoTime();
+        // MultiFieldQueryParser non è thread-safe, se ne crea uno per ogni query
+        Query q = new MultiFieldQueryParser(FIELDS, analyzer).parse(queryString);
+        parseTime.record(System.nanoTime() - startTime);
+        if (queryLog != null) {
+            queryLog.record(queryString);
+        }
+        return q;
+    }
+
+    // apre la cartella di un indice, con MMapDirectory se richiesto; i file con le estensioni da precaricare
+    // vengono aperti da una seconda MMapDirectory sulla stessa cartella, che li carica in memoria
+    private static Directory openDirectory(Path dir, SearchOptions options) throws IOException {
+        if (!options.isMmap() && options.getPreload().isEmpty()) {
+            return FSDirectory.open(dir);
+        }
+        MMapDirectory mapped = new MMapDirectory(dir);
+        if (options.getPreload().isEmpty()) {
+            return mapped;
+        }
+        MMapDirectory preloaded = new MMapDirectory(dir);
+        preloaded.setPreload(true);
+        return new FileSwitchDirectory(options.getPreload(), preloaded, mapped, true);
+    }
+
+    // esegue le query recenti del registro sul nuovo searcher, così le prime ricerche non pagano il caricamento
+    // delle pagine dei file e l'inizializzazione delle strutture dei segmenti
+    private void warm(IndexSearcher searcher) throws IOException {
+        if (warmQueries.isEmpty()) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        IndexReader reader = searcher.getIndexReader();
+        searcher.setSimilarity(similarity);
+        Sort sort = options.getSort().getSort();
+        for (String queryString : warmQueries) {
+            Query q;
+            try {
+                q = new MultiFieldQueryParser(FIELDS, analyzer).parse(queryString);
+            } catch (ParseException e) {
+                // le query non valide del registro vengono saltate
+                continue;
+            }
+            TopDocs topDocs = searcher.search(q, topDocsManager(sort, options.getTopK()));
+            pathFetcher.fetch(reader, topDocs.scoreDocs);
+            if (options.isSnippets()) {
+                highlighter.highlight(reader, q, topDocs.scoreDocs,
+                        TimeUnit.MILLISECONDS.toNanos(options.getSnippetBudgetMillis()));
+            }
+            warmedQueries.increment();
+        }
+        warmTime.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Esegue una ricerca e restituisce i primi topK risultati in ordine di score.
+     *
+     * @param queryString la query.
+     * @return il risultato della ricerca.
+     * @throws ParseException se la query non è valida.
+     * @throws IOException    se si verifica un errore di I/O.
+     */
+    public SearchResult search(String queryString) throws ParseException, IOException {
+        return search(parse(queryString));
+    }
+
+    /**
+     * Esegue una ricerca e restituisce i primi topK risultati in ordine di score, o nell'ordine indicato
+     * nelle opzioni (vedi SearchOptions.setSort), nel qual caso lo score dei risultati è NaN.
+     * Se la ricerca supera il timeout vengono restituiti i risultati raccolti fino a quel momento.
+     * Se la cache è attiva e la stessa query è già stata eseguita sulla stessa versione dell'indice,
+     * il risultato viene letto dalla cache.
+     *
+     * @param q la query.
+     * @return il risultato della ricerca.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    public SearchResult search(Query q) throws IOException {
+        IndexSearcher acquired = manager.acquire();
+        try {
+            long startTime = System.nanoTime();
+            queries.increment();
+            long readerVersion = Shards.version(acquired.getIndexReader());
+            if (cache != null) {
+                SearchResult cached = cache.get(readerVersion, q, options.getTopK());
+                if (cached != null) {
+                    totalHits.add(cached.totalHits);
+                    long elapsed = System.nanoTime() - startTime;
+                    totalTime.record(elapsed);
+                    return cached.fromCache(elapsed);
+                }
+            }
+
+            // il timeout vale per una sola query, quindi si usa un searcher per ogni ricerca sullo stesso reader
+            IndexReader reader = acquired.getIndexReader();
+            SlicedIndexSearcher searcher = new SlicedIndexSearcher(reader, sliceExecutor, numShards > 0
+                    ? Shards.slices(reader)
+                    : SlicedIndexSearcher.slices(reader, options.getSliceMaxDocs(), options.getSliceMaxSegments()));
+            searcher.setSimilarity(similarity);
+            if (options.getTimeoutMillis() > 0) {
+                searcher.setTimeout(new QueryTimeoutImpl(options.getTimeoutMillis()));
+            }
+
+            // con i file divisi in passaggi o i duplicati i risultati vengono raggruppati, tenendo di ogni gruppo
+            // il primo nell'ordine dei risultati: se i primi n risultati non bastano per topK gruppi si cercano i primi 4n
+            boolean grouped = collapser.isNeeded(reader);
+            Sort sort = options.getSort().getSort();
+            int topK = options.getTopK();
+            int numHits = topK;
+            long searchNanos = 0;
+            long rewriteNanos = 0;
+            long fetchNanos = 0;
+            TopDocs topDocs;
+            ScoreDoc[] scoreDocs;
+            String[] paths;
+            FacetCounts facets = null;
+            while (true) {
+                // il numero di hits contati oltre i primi numHits è condiviso tra le slice,
+                // come con un unico collector; reduce unisce i top-k delle slice (o degli shard).
+                // Con un ordine diverso dallo score, sui segmenti ordinati allo stesso modo la raccolta
+                // si ferma dopo numHits documenti, una volta superata la soglia di hits contati
+                long searchStart = System.nanoTime();
+                CollectorManager<? extends Collector, ? extends TopDocs> topManager = topDocsManager(sort, numHits);
+                if (options.getFacets() > 0 && facets == null) {
+                    // i conteggi richiedono tutti i risultati, quindi il top-k non può saltare i documenti
+                    // con score non competitivo e totalHits diventa esatto; si contano solo al primo giro
+                    Object[] results = searcher.search(q,
+                            new MultiCollectorManager(topManager, FacetCounts.manager(FACET_FIELDS)));
+                    topDocs = (TopDocs) results[0];
+                    facets = (FacetCounts) results[1];
+                } else {
+                    topDocs = searcher.search(q, topManager);
+                }
+                searchNanos += System.nanoTime() - searchStart;
+                rewriteNanos += searcher.getRewriteNanos();
+
+                // i path vengono letti dai DocValues, in ordine di docID
+                long fetchStart = System.nanoTime();
+                scoreDocs = topDocs.scoreDocs;
+                paths = pathFetcher.fetch(reader, scoreDocs);
+                fetchNanos += System.nanoTime() - fetchStart;
+                if (!grouped) {
+                    break;
+                }
+                int numFiles = collapser.collapse(reader, scoreDocs, paths, topK);
+                if (numFiles == topK || scoreDocs.length < numHits || searcher.timedOut()) {
+                    scoreDocs = Arrays.copyOf(scoreDocs, numFiles);
+                    paths = Arrays.copyOf(paths, numFiles);
+                    break;
+                }
+                numHits = (int) Math.min(4L * numHits, Integer.MAX_VALUE - 8);
+            }
+            searchTime.record(searchNanos);
+            rewriteTime.record(rewriteNanos);
+            collectTime.record(searchNanos - rewriteNanos);
+            long copiesStart = System.nanoTime();
+            List<List<String>> copies = ResultCollapser.copies(reader, scoreDocs, paths, MAX_COPIES);
+            fetchTime.record(fetchNanos + System.nanoTime() - copiesStart);
+
+            // gli snippet vengono dagli offset nelle postings e dal contenuto memorizzato, entro il tempo indicato
+            String[] snippets = new String[paths.length];
+            if (options.isSnippets()) {
+                long snippetStart = System.nanoTime();
+                snippets = highlighter.highlight(reader, q, scoreDocs,
+                        TimeUnit.MILLISECONDS.toNanos(options.getSnippetBudgetMillis()));
+                snippetTime.record(System.nanoTime() - snippetStart);
+            }
+            List<SearchResult.Hit> hits = new ArrayList<>(scoreDocs.length);
+            for (int i = 0; i < paths.length; i++) {
+                hits.add(new SearchResult.Hit(paths[i], scoreDocs[i].score, snippets[i], copies.get(i)));
+            }
+
+            SearchResult result = new SearchResult(hits, topDocs.totalHits.value,
+                    topDocs.totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO,
+                    searcher.timedOut(), System.nanoTime() - startTime, facets);
+            totalTime.record(result.elapsedNanos);
+            totalHits.add(result.totalHits);
+            if (result.timedOut) {
+                timeouts.increment();
+            } else if (cache != null) {
+                // i risultati parziali non vengono messi in cache
+                cache.put(readerVersion, q, options.getTopK(), result);
+            }
+            return result;
+        } finally {
+            manager.release(acquired);
+        }
+    }
+
+    // i primi numHits risultati per score, o nell'ordine sort
+    private CollectorManager<? extends Collector, ? extends TopDocs> topDocsManager(Sort sort, int numHits) {
+        return sort == null
+                ? TopScoreDocCollector.createSharedManager(numHits, null, options.getTotalHitsThreshold())
+                : TopFieldCollector.createSharedManager(sort, numHits, null, options.getTotalHitsThreshold());
+    }
+
+    /**
+     * Restringe una query ai file di una cartella (comprese le sottocartelle) e/o con un'estensione,
+     * con filtri che non cambiano lo score.
+     *
+     * @param q         la query.
+     * @param directory la cartella, come nei conteggi di FacetCounts, oppure null.
+     * @param extension l'estensione, senza punto, oppure null.
+     * @return la query ristretta, oppure q se directory ed extension sono null o vuote.
+     */
+    public static Query drillDown(Query q, String directory, String extension) {
+        boolean byDirectory = directory != null && !directory.isEmpty();
+        boolean byExtension = extension != null && !extension.isEmpty();
+        if (!byDirectory && !byExtension) {
+            return q;
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder().add(q, BooleanClause.Occur.MUST);
+        if (byDirectory) {
+            builder.add(new TermQuery(new Term(TextFileIndexer.CARTELLA, directory)), BooleanClause.Occur.FILTER);
+        }
+        if (byExtension) {
+            builder.add(new TermQuery(new Term(TextFileIndexer.ESTENSIONE, extension.toLowerCase())),
+                    BooleanClause.Occur.FILTER);
+        }
+        return builder.build();
+    }
+
+    private void buildSuggester() throws IOException {
+        IndexSearcher acquired = manager.acquire();
+        try {
+            long startTime = System.nanoTime();
+            suggester.build(acquired.getIndexReader());
+            suggestBuildTime.record(System.nanoTime() - startTime);
+        } finally {
+            manager.release(acquired);
+        }
+    }
+
+    /**
+     * Suggerisce i nomi dei file che completano un prefisso, al massimo topK, i più frequenti per primi.
+     *
+     * @param prefix il prefisso digitato, analizzato come il campo nome.
+     * @return i suggerimenti, vuoto se il suggester è disattivato.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    public List<FileNameSuggester.Suggestion> suggest(String prefix) throws IOException {
+        if (suggester == null) {
+            return Collections.emptyList();
+        }
+        long startTime = System.nanoTime();
+        List<FileNameSuggester.Suggestion> suggestions = suggester.lookup(prefix, options.getTopK());
+        suggestTime.record(System.nanoTime() - startTime);
+        return suggestions;
+    }
+
+    /**
+     * @return il tempo impiegato dal costruttore per aprire l'indice e riscaldare il searcher,
+     * dopo il quale il servizio è pronto.
+     */
+    public long getReadyNanos() {
+        return readyNanos;
+    }
+
+    /**
+     * @return il numero di query del registro eseguite per riscaldare ogni nuovo searcher.
+     */
+    public int getNumWarmQueries() {
+        return warmQueries.size();
+    }
+
+    /**
+     * @return il numero di shard dell'indice, 0 se l'indice non è diviso in shard.
+     */
+    public int getNumShards() {
+        return numShards;
+    }
+
+    /**
+     * @return le statistiche della cache dei risultati, oppure null se la cache è disattivata.
+     */
+    public QueryResultCache.Stats getCacheStats() {
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * @return le metriche delle ricerche: tempi di parse, rewrite, collect, fetch e totali,
+     * numero di query, hits, timeout e uso della cache.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Riapre subito il searcher se l'indice è cambiato.
+     *
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    public void maybeRefresh() throws IOException {
+        manager.maybeRefresh();
+    }
+
+    @Override
+    public void close() throws IOException {
+        metrics.close();
+        refresher.shutdownNow();
+        if (sliceExecutor != null) {
+            sliceExecutor.shutdownNow();
+        }
+        manager.close();
+        IOUtils.close(queryLog);
+        IOUtils.close(directories);
+    }
+}
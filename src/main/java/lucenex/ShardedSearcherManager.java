@@ -0,0 +1,124 @@
+package lucenex;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Come SearcherManager, ma su più shard: il searcher cerca su un MultiReader che contiene un DirectoryReader
+ * per ogni shard, quindi le statistiche usate per lo score (numero di documenti, frequenza dei termini)
+ * sono quelle dell'intero indice e gli score di shard diversi sono confrontabili.
+ * Alla riapertura vengono riaperti solo gli shard cambiati. Come con SearcherManager, i searcher vengono creati
+ * da una SearcherFactory, che può riscaldarli prima che vengano usati.
+ */
+class ShardedSearcherManager extends ReferenceManager<IndexSearcher> {
+    private final int numShards;
+    private final SearcherFactory factory;
+
+    /**
+     * Cerca sull'ultimo commit di ogni shard.
+     */
+    ShardedSearcherManager(Directory[] shards, SearcherFactory factory) throws IOException {
+        this(shards.length, i -> DirectoryReader.open(shards[i]), factory);
+    }
+
+    /**
+     * Cerca sui reader near-real-time degli IndexWriter degli shard, che vedono anche le modifiche
+     * non ancora salvate con un commit.
+     */
+    ShardedSearcherManager(IndexWriter[] writers, SearcherFactory factory) throws IOException {
+        this(writers.length, i -> DirectoryReader.open(writers[i]), factory);
+    }
+
+    private ShardedSearcherManager(int numShards, IOFunction<Integer, DirectoryReader> open,
+                                   SearcherFactory factory) throws IOException {
+        this.numShards = numShards;
+        this.factory = factory;
+        DirectoryReader[] readers = new DirectoryReader[numShards];
+        try {
+            for (int i = 0; i < numShards; i++) {
+                readers[i] = open.apply(i);
+            }
+            current = newSearcher(readers, readers, null);
+        } catch (IOException | RuntimeException e) {
+            for (DirectoryReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    int getNumShards() {
+        return numShards;
+    }
+
+    // il MultiReader prende un riferimento a ogni shard; i reader appena aperti vengono poi rilasciati,
+    // così restano aperti finché c'è un MultiReader che li usa. Se la factory fallisce il MultiReader viene chiuso
+    private IndexSearcher newSearcher(DirectoryReader[] readers, DirectoryReader[] opened, MultiReader previous)
+            throws IOException {
+        MultiReader multiReader = new MultiReader(readers, false);
+        try {
+            return factory.newSearcher(multiReader, previous);
+        } catch (IOException | RuntimeException e) {
+            multiReader.close();
+            throw e;
+        } finally {
+            for (DirectoryReader reader : opened) {
+                if (reader != null) {
+                    reader.decRef();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void decRef(IndexSearcher reference) throws IOException {
+        reference.getIndexReader().decRef();
+    }
+
+    @Override
+    protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+        List<IndexReaderContext> children = referenceToRefresh.getIndexReader().getContext().children();
+        DirectoryReader[] readers = new DirectoryReader[children.size()];
+        DirectoryReader[] opened = new DirectoryReader[children.size()];
+        boolean changed = false;
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                DirectoryReader old = (DirectoryReader) children.get(i).reader();
+                opened[i] = DirectoryReader.openIfChanged(old);
+                readers[i] = opened[i] == null ? old : opened[i];
+                changed |= opened[i] != null;
+            }
+        } catch (IOException | RuntimeException e) {
+            for (DirectoryReader reader : opened) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+            throw e;
+        }
+        return changed
+                ? newSearcher(readers, opened, (MultiReader) referenceToRefresh.getIndexReader())
+                : null;
+    }
+
+    @Override
+    protected boolean tryIncRef(IndexSearcher reference) {
+        return reference.getIndexReader().tryIncRef();
+    }
+
+    @Override
+    protected int getRefCount(IndexSearcher reference) {
+        return reference.getIndexReader().getRefCount();
+    }
+}
@@ -0,0 +1,114 @@
+package lucenex;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regole comuni all'indicizzazione e alla ricerca di un indice diviso in shard.
+ * Un indice con N shard è una cartella con le sottocartelle shard0 ... shardN-1, ognuna un indice Lucene;
+ * ogni documento sta nello shard scelto dall'hash del suo path. Il numero di shard è registrato nei dati
+ * di ogni commit, così la ricerca apre solo gli shard dell'ultima indicizzazione.
+ */
+final class Shards {
+    private static final String PREFIX = "shard";
+    /** Chiave dei dati del commit con il numero di shard dell'indice. */
+    static final String COMMIT_KEY = "shards";
+
+    private Shards() {
+    }
+
+    /**
+     * @return lo shard in cui indicizzare il file con questo path. Dipende solo dal path,
+     * quindi un file aggiornato o rimosso viene cercato sempre nello stesso shard.
+     */
+    static int shardOf(String path, int numShards) {
+        return Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(path), 0), numShards);
+    }
+
+    static Path shardDir(Path indexDir, int shard) {
+        return indexDir.resolve(PREFIX + shard);
+    }
+
+    /**
+     * @return il numero di shard dell'indice in indexDir, oppure 0 se l'indice non è diviso in shard:
+     * quello registrato nell'ultimo commit di shard0, o per gli indici che non lo registrano il numero
+     * di cartelle shard0 ... shardN-1.
+     * @throws IOException se l'ultimo commit di shard0 non può essere letto.
+     */
+    static int count(Path indexDir) throws IOException {
+        Path first = shardDir(indexDir, 0);
+        if (!Files.isDirectory(first)) {
+            return 0;
+        }
+        try (Directory dir = FSDirectory.open(first)) {
+            if (DirectoryReader.indexExists(dir)) {
+                String recorded = SegmentInfos.readLatestCommit(dir).getUserData().get(COMMIT_KEY);
+                if (recorded != null) {
+                    return Integer.parseInt(recorded);
+                }
+            }
+        }
+        int shards = 0;
+        while (Files.isDirectory(shardDir(indexDir, shards))) {
+            shards++;
+        }
+        return shards;
+    }
+
+    /**
+     * @return le cartelle shardK presenti in indexDir con K almeno from.
+     */
+    static List<Path> dirsFrom(Path indexDir, int from) {
+        List<Path> dirs = new ArrayList<>();
+        for (int i = from; Files.isDirectory(shardDir(indexDir, i)); i++) {
+            dirs.add(shardDir(indexDir, i));
+        }
+        return dirs;
+    }
+
+    /**
+     * @return la versione di un reader su uno o più shard: la somma delle versioni degli shard,
+     * che cresce ogni volta che cambia almeno uno shard.
+     */
+    static long version(IndexReader reader) {
+        if (reader instanceof DirectoryReader) {
+            return ((DirectoryReader) reader).getVersion();
+        }
+        long version = 0;
+        for (IndexReaderContext child : reader.getContext().children()) {
+            version += version(child.reader());
+        }
+        return version;
+    }
+
+    /**
+     * @return una slice per ogni shard di un reader creato da ShardedSearcherManager.
+     */
+    static IndexSearcher.LeafSlice[] slices(IndexReader reader) {
+        // le foglie del MultiReader sono in ordine di shard
+        List<IndexReaderContext> children = reader.getContext().children();
+        List<LeafReaderContext> leaves = reader.leaves();
+        IndexSearcher.LeafSlice[] slices = new IndexSearcher.LeafSlice[children.size()];
+        int start = 0;
+        for (int i = 0; i < slices.length; i++) {
+            int end = start + children.get(i).reader().leaves().size();
+            slices[i] = new IndexSearcher.LeafSlice(new ArrayList<>(leaves.subList(start, end)));
+            start = end;
+        }
+        return slices;
+    }
+}
@@ -0,0 +1,89 @@
+package lucenex;
+
+/**
+ * Firma SimHash a 64 bit di un testo, per riconoscere i quasi duplicati: testi che differiscono di poche parole
+ * hanno firme che differiscono di pochi bit (vedi distance). Le caratteristiche sono le coppie di parole consecutive,
+ * in minuscolo; il testo viene letto un carattere alla volta, senza tenerlo in memoria.
+ */
+final class SimHash {
+    // FNV-1a a 64 bit, per l'hash di ogni parola
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int[] weights = new int[64];
+    private long word = FNV_OFFSET;
+    private boolean inWord;
+    private long previousWord;
+    private int words;
+
+    void add(char c) {
+        if (Character.isLetterOrDigit(c)) {
+            word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+            inWord = true;
+        } else if (inWord) {
+            endWord();
+        }
+    }
+
+    void add(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            add(chars[i]);
+        }
+    }
+
+    void add(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            add(text.charAt(i));
+        }
+    }
+
+    private void endWord() {
+        if (words > 0) {
+            long feature = mix(previousWord * 0x9E3779B97F4A7C15L + word);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += (feature >>> bit & 1) == 1 ? 1 : -1;
+            }
+        }
+        previousWord = word;
+        words++;
+        word = FNV_OFFSET;
+        inWord = false;
+    }
+
+    /**
+     * @return la firma del testo letto finora, oppure 0 se il testo ha meno di due parole.
+     */
+    long signature() {
+        if (inWord) {
+            endWord();
+        }
+        if (words < 2) {
+            return 0;
+        }
+        long signature = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                signature |= 1L << bit;
+            }
+        }
+        // 0 indica l'assenza di firma
+        return signature == 0 ? 1 : signature;
+    }
+
+    /**
+     * @return il numero di bit diversi tra due firme.
+     */
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // finalizzatore di MurmurHash3, distribuisce i bit dell'hash delle due parole
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
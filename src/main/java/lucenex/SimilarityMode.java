@@ -0,0 +1,44 @@
+package lucenex;
+
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.search.similarities.LMJelinekMercerSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+
+/**
+ * La funzione di ranking usata dalle ricerche, tra quelle confrontate in SamplesTest.
+ */
+public enum SimilarityMode {
+    /** BM25 con i parametri di default di Lucene. */
+    BM25 {
+        @Override
+        public Similarity newSimilarity() {
+            return new BM25Similarity();
+        }
+    },
+    /** TF-IDF classico. */
+    CLASSIC {
+        @Override
+        public Similarity newSimilarity() {
+            return new ClassicSimilarity();
+        }
+    },
+    /** Language model con smoothing di Jelinek-Mercer, lambda 0.1. */
+    LM_JELINEK_MERCER {
+        @Override
+        public Similarity newSimilarity() {
+            return new LMJelinekMercerSimilarity(0.1f);
+        }
+    };
+
+    public abstract Similarity newSimilarity();
+
+    /**
+     * @param name il nome, senza distinzione tra maiuscole e minuscole (es. "lm_jelinek_mercer").
+     * @return il SimilarityMode corrispondente.
+     * @throws IllegalArgumentException se il nome non corrisponde a nessuna similarity.
+     */
+    public static SimilarityMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,88 @@
+package lucenex;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Misura come cambia la latenza delle query al variare del numero di slice in cui vengono divisi
+ * i segmenti dell'indice. Le query sono i termini più frequenti del campo contenuto e le loro
+ * disgiunzioni a coppie; per ogni numero di slice si riportano p50, p99 e p999.
+ *
+ * Uso: SliceReport [--index=tmp/index] [--slice-threads=N]
+ */
+public class SliceReport {
+    private static final int NUM_TERMS = 40;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        SearchOptions options = SearchOptions.parse(args);
+        int threads = options.getSliceThreads() > 0 ? options.getSliceThreads()
+                : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(new File(options.getIndexDir()).toPath()))) {
+            List<Query> queries = queries(reader);
+            int numLeaves = reader.leaves().size();
+            System.out.println("Segmenti: " + numLeaves + ", documenti: " + reader.maxDoc()
+                    + ", query: " + queries.size() + ", thread: " + threads);
+            System.out.println(String.format("%8s %12s %12s %12s", "slice", "p50 us", "p99 us", "p999 us"));
+
+            for (int target = 1; target <= Math.max(1, numLeaves); target *= 2) {
+                int maxSegments = (numLeaves + target - 1) / target;
+                int maxDocs = Math.max(1, (reader.maxDoc() + target - 1) / target);
+                IndexSearcher.LeafSlice[] slices = SlicedIndexSearcher.slices(reader, maxDocs, maxSegments);
+                IndexSearcher searcher = new SlicedIndexSearcher(reader, target == 1 ? null : executor, slices);
+
+                for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                    for (Query q : queries) {
+                        search(searcher, q, options.getTopK());
+                    }
+                }
+                long[] latencies = new long[queries.size() * MEASURED_ROUNDS];
+                int n = 0;
+                for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                    for (Query q : queries) {
+                        long startTime = System.nanoTime();
+                        search(searcher, q, options.getTopK());
+                        latencies[n++] = (System.nanoTime() - startTime) / 1000;
+                    }
+                }
+                System.out.println(String.format("%8d %12d %12d %12d", target == 1 ? 1 : slices.length,
+                        Benchmarks.percentile(latencies, 0.50), Benchmarks.percentile(latencies, 0.99),
+                        Benchmarks.percentile(latencies, 0.999)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static TopDocs search(IndexSearcher searcher, Query q, int topK) throws Exception {
+        return searcher.search(q, TopScoreDocCollector.createSharedManager(topK, null, 1000));
+    }
+
+    private static List<Query> queries(IndexReader reader) throws Exception {
+        List<Query> terms = Benchmarks.highFreqTermQueries(reader, "contenuto", NUM_TERMS);
+        List<Query> queries = new ArrayList<>(terms);
+        for (int i = 0; i + 1 < terms.size(); i += 2) {
+            queries.add(new BooleanQuery.Builder()
+                    .add(terms.get(i), BooleanClause.Occur.SHOULD)
+                    .add(terms.get(i + 1), BooleanClause.Occur.SHOULD)
+                    .build());
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,126 @@
+package lucenex;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * IndexSearcher che esegue una query in parallelo su gruppi di segmenti (slice).
+ * A differenza di IndexSearcher con executor, la divisione in slice è scelta da chi lo crea,
+ * e l'ultima slice viene cercata nel thread chiamante.
+ * Il searcher non calcola slice nel costruttore, quindi è economico crearne uno per ogni query.
+ */
+class SlicedIndexSearcher extends IndexSearcher {
+    private final Executor executor;
+    private final LeafSlice[] slices;
+    private long rewriteNanos;
+
+    /**
+     * @param reader   il reader su cui cercare.
+     * @param executor l'executor su cui cercare le slice; se null la ricerca è sequenziale.
+     * @param slices   i gruppi di segmenti da cercare in parallelo.
+     */
+    SlicedIndexSearcher(IndexReader reader, Executor executor, LeafSlice[] slices) {
+        super(reader);
+        this.executor = executor;
+        this.slices = slices;
+    }
+
+    /**
+     * Divide i segmenti di un reader in slice.
+     *
+     * @param reader              il reader.
+     * @param maxDocsPerSlice     numero massimo di documenti in una slice (un segmento più grande ha una slice tutta sua).
+     * @param maxSegmentsPerSlice numero massimo di segmenti in una slice.
+     * @return le slice.
+     */
+    static LeafSlice[] slices(IndexReader reader, int maxDocsPerSlice, int maxSegmentsPerSlice) {
+        return IndexSearcher.slices(reader.leaves(), maxDocsPerSlice, maxSegmentsPerSlice);
+    }
+
+    LeafSlice[] getSliceGroups() {
+        return slices;
+    }
+
+    /**
+     * @return il tempo impiegato dall'ultima ricerca per riscrivere la query e crearne il Weight;
+     * il resto della ricerca è la raccolta dei risultati.
+     */
+    long getRewriteNanos() {
+        return rewriteNanos;
+    }
+
+    @Override
+    public <C extends Collector, T> T search(Query query, CollectorManager<C, T> collectorManager) throws IOException {
+        boolean sequential = executor == null || slices.length <= 1;
+        int numCollectors = sequential ? 1 : slices.length;
+        List<C> collectors = new ArrayList<>(numCollectors);
+        ScoreMode scoreMode = null;
+        for (int i = 0; i < numCollectors; i++) {
+            C collector = collectorManager.newCollector();
+            collectors.add(collector);
+            if (scoreMode == null) {
+                scoreMode = collector.scoreMode();
+            } else if (scoreMode != collector.scoreMode()) {
+                throw new IllegalStateException("CollectorManager non restituisce Collector con lo stesso ScoreMode");
+            }
+        }
+        // la query viene riscritta e pesata una sola volta per tutte le slice
+        long startTime = System.nanoTime();
+        Weight weight = createWeight(rewrite(query), scoreMode, 1);
+        rewriteNanos = System.nanoTime() - startTime;
+
+        if (sequential) {
+            search(leafContexts, weight, collectors.get(0));
+            return collectorManager.reduce(collectors);
+        }
+
+        List<FutureTask<C>> tasks = new ArrayList<>(slices.length);
+        for (int i = 0; i < slices.length; i++) {
+            List<LeafReaderContext> leaves = Arrays.asList(slices[i].leaves);
+            C collector = collectors.get(i);
+            FutureTask<C> task = new FutureTask<>(() -> {
+                search(leaves, weight, collector);
+                return collector;
+            });
+            tasks.add(task);
+            if (i < slices.length - 1) {
+                executor.execute(task);
+            } else {
+                task.run();
+            }
+        }
+
+        for (FutureTask<C> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("ricerca interrotta");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        return collectorManager.reduce(collectors);
+    }
+}
@@ -0,0 +1,169 @@
+package lucenex;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Crea gli estratti (snippet) del contenuto dei documenti trovati, con i termini della query evidenziati.
+ * Le posizioni dei termini nel testo vengono lette dagli offset memorizzati nelle postings
+ * (TextFileIndexer con snippets attivo), quindi non serve rileggere i file né analizzare di nuovo il contenuto:
+ * basta leggere il contenuto memorizzato e tagliare la finestra con più termini della query.
+ */
+class SnippetHighlighter {
+    static final String START_TAG = "<b>";
+    static final String END_TAG = "</b>";
+    private static final String ELLIPSIS = "...";
+
+    private final String field;
+    private final int maxChars;
+
+    /**
+     * @param field    il campo da cui creare gli snippet, indicizzato con gli offset e memorizzato.
+     * @param maxChars la lunghezza massima di uno snippet, senza i tag.
+     */
+    SnippetHighlighter(String field, int maxChars) {
+        this.field = field;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Crea gli snippet dei documenti trovati, finché non si supera il tempo a disposizione.
+     *
+     * @param reader      il reader su cui è stata eseguita la ricerca.
+     * @param query       la query, già riscritta.
+     * @param hits        i documenti trovati.
+     * @param budgetNanos tempo massimo per creare tutti gli snippet; 0 per non avere limiti.
+     * @return uno snippet per ogni hit, nello stesso ordine; null per i documenti senza contenuto memorizzato
+     * o per quelli non elaborati entro il tempo a disposizione.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    String[] highlight(IndexReader reader, Query query, ScoreDoc[] hits, long budgetNanos) throws IOException {
+        long deadline = System.nanoTime() + budgetNanos;
+        Set<Term> terms = new HashSet<>();
+        query.visit(QueryVisitor.termCollector(terms));
+        terms.removeIf(term -> !term.field().equals(field));
+
+        // come per i path, i documenti vengono letti in ordine di docID
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(hits[a].doc, hits[b].doc));
+
+        List<LeafReaderContext> leaves = reader.leaves();
+        String[] snippets = new String[hits.length];
+        for (int i : order) {
+            if (budgetNanos > 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hits[i].doc, leaves));
+            snippets[i] = highlight(leaf, hits[i].doc - leaf.docBase, terms);
+        }
+        return snippets;
+    }
+
+    private String highlight(LeafReaderContext leaf, int doc, Set<Term> terms) throws IOException {
+        String content = leaf.reader().document(doc, Collections.singleton(field)).get(field);
+        if (content == null) {
+            return null;
+        }
+        int[] offsets = offsets(leaf, doc, terms);
+        int numMatches = offsets.length / 2;
+
+        // la finestra di maxChars caratteri che contiene più termini della query
+        int bestStart = 0;
+        int bestCount = 0;
+        for (int first = 0, last = 0; first < numMatches; first++) {
+            while (last < numMatches && offsets[2 * last + 1] - offsets[2 * first] <= maxChars) {
+                last++;
+            }
+            if (last - first > bestCount) {
+                bestCount = last - first;
+                bestStart = offsets[2 * first];
+            }
+        }
+        // un po' di contesto prima del primo termine, partendo da un inizio di parola
+        int start = Math.max(0, bestStart - maxChars / 5);
+        while (start > 0 && start < bestStart && !Character.isWhitespace(content.charAt(start - 1))) {
+            start++;
+        }
+        int end = Math.min(content.length(), start + maxChars);
+        while (end < content.length() && end > bestStart && !Character.isWhitespace(content.charAt(end))) {
+            end--;
+        }
+
+        StringBuilder sb = new StringBuilder(end - start + 16);
+        if (start > 0) {
+            sb.append(ELLIPSIS);
+        }
+        int pos = start;
+        for (int m = 0; m < numMatches; m++) {
+            int matchStart = offsets[2 * m];
+            int matchEnd = offsets[2 * m + 1];
+            if (matchStart < pos || matchEnd > end) {
+                continue;
+            }
+            sb.append(content, pos, matchStart).append(START_TAG).append(content, matchStart, matchEnd).append(END_TAG);
+            pos = matchEnd;
+        }
+        sb.append(content, pos, end);
+        if (end < content.length()) {
+            sb.append(ELLIPSIS);
+        }
+        // uno snippet sta su una riga
+        return sb.toString().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * @return gli offset di inizio e fine di tutte le occorrenze dei termini nel documento, ordinati per inizio.
+     */
+    private int[] offsets(LeafReaderContext leaf, int doc, Set<Term> terms) throws IOException {
+        Terms fieldTerms = leaf.reader().terms(field);
+        if (fieldTerms == null || !fieldTerms.hasOffsets() || terms.isEmpty()) {
+            return new int[0];
+        }
+        long[] packed = new long[16];
+        int n = 0;
+        TermsEnum termsEnum = fieldTerms.iterator();
+        PostingsEnum postings = null;
+        for (Term term : terms) {
+            if (!termsEnum.seekExact(term.bytes())) {
+                continue;
+            }
+            postings = termsEnum.postings(postings, PostingsEnum.OFFSETS);
+            if (postings.advance(doc) != doc) {
+                continue;
+            }
+            for (int i = 0; i < postings.freq(); i++) {
+                postings.nextPosition();
+                if (n == packed.length) {
+                    packed = Arrays.copyOf(packed, n * 2);
+                }
+                // inizio e fine in un solo long, così l'ordinamento è per inizio
+                packed[n++] = ((long) postings.startOffset() << 32) | postings.endOffset();
+            }
+        }
+        Arrays.sort(packed, 0, n);
+        int[] offsets = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            offsets[2 * i] = (int) (packed[i] >>> 32);
+            offsets[2 * i + 1] = (int) packed[i];
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,91 @@
+package lucenex;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.FSDirectory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Misura quanto costano gli snippet: indicizza la stessa cartella con e senza --snippets e riporta
+ * la dimensione dell'indice, il tempo di indicizzazione e la latenza delle ricerche, con e senza snippet,
+ * sui termini più frequenti del campo contenuto.
+ *
+ * Uso: SnippetReport cartella-da-indicizzare [--workers=N ...]
+ */
+public class SnippetReport {
+    private static final int NUM_QUERIES = 50;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: SnippetReport cartella-da-indicizzare [--workers=N]");
+            System.exit(-1);
+        }
+        IndexerOptions base = IndexerOptions.parse(Arrays.copyOfRange(args, 1, args.length));
+
+        System.out.println(String.format("%-24s %14s %14s %14s %14s", "indice / ricerca", "dimensione KB",
+                "indicizz. ms", "query p50 us", "query p99 us"));
+        for (boolean snippetsInIndex : new boolean[]{false, true}) {
+            Path indexDir = Files.createTempDirectory("snippets-" + snippetsInIndex);
+            try {
+                IndexerOptions options = new IndexerOptions()
+                        .setIndexDir(indexDir.toString())
+                        .setNumWorkers(base.getNumWorkers())
+                        .setQueueCapacity(base.getQueueCapacity())
+                        .setSnippets(snippetsInIndex);
+
+                long startTime = System.nanoTime();
+                TextFileIndexer indexer = new TextFileIndexer(options);
+                indexer.indexFileOrDirectory(args[0]);
+                indexer.closeIndex();
+                long indexingMillis = (System.nanoTime() - startTime) / 1000000;
+                long sizeKb = Benchmarks.sizeOf(indexDir) / 1024;
+
+                // sull'indice con gli snippet si misura la ricerca sia senza sia con gli snippet
+                for (boolean snippetsInSearch : snippetsInIndex ? new boolean[]{false, true} : new boolean[]{false}) {
+                    long[] latencies = measureQueries(indexDir, snippetsInSearch);
+                    System.out.println(String.format("%-24s %14d %14d %14d %14d",
+                            (snippetsInIndex ? "snippet" : "senza snippet") + " / "
+                                    + (snippetsInSearch ? "snippet" : "senza"),
+                            sizeKb, indexingMillis,
+                            Benchmarks.percentile(latencies, 0.50), Benchmarks.percentile(latencies, 0.99)));
+                }
+            } finally {
+                Benchmarks.deleteRecursively(indexDir);
+            }
+        }
+    }
+
+    /**
+     * Esegue le query con SearchService, senza cache e senza limite di tempo per gli snippet,
+     * e restituisce le latenze in microsecondi.
+     */
+    private static long[] measureQueries(Path indexDir, boolean snippets) throws Exception {
+        List<Query> queries;
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexDir))) {
+            queries = Benchmarks.highFreqTermQueries(reader, "contenuto", NUM_QUERIES);
+        }
+        SearchOptions options = new SearchOptions().setIndexDir(indexDir.toString()).setCacheRamBytes(0)
+                .setSuggest(false).setSnippets(snippets).setSnippetBudgetMillis(0);
+        try (SearchService service = new SearchService(options)) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                for (Query q : queries) {
+                    service.search(q);
+                }
+            }
+            long[] latencies = new long[queries.size() * MEASURED_ROUNDS];
+            int n = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                for (Query q : queries) {
+                    latencies[n++] = service.search(q).elapsedNanos / 1000;
+                }
+            }
+            return latencies;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package lucenex;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+
+/**
+ * L'ordine dei risultati di una ricerca, e quello dei documenti nei segmenti dell'indice (vedi
+ * IndexerOptions.setIndexSort). Se l'indice è ordinato come la ricerca, la raccolta di ogni segmento si ferma
+ * dopo i primi k risultati invece di visitare tutti i documenti trovati.
+ */
+public enum SortMode {
+    /** Per score, dal più alto; come ordine dell'indice, nessun ordinamento. */
+    SCORE("score") {
+        @Override
+        public Sort getSort() {
+            return null;
+        }
+    },
+    /** Per data di modifica, dal file più recente. */
+    MTIME("data di modifica") {
+        @Override
+        public Sort getSort() {
+            return new Sort(new SortField("mtime", SortField.Type.LONG, true));
+        }
+    },
+    /** Per path, in ordine alfabetico. */
+    PATH("path") {
+        @Override
+        public Sort getSort() {
+            return new Sort(new SortField("path", SortField.Type.STRING));
+        }
+    };
+
+    private final String description;
+
+    SortMode(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return l'ordinamento sui DocValues scritti da TextFileIndexer, oppure null per l'ordine di score.
+     */
+    public abstract Sort getSort();
+
+    /**
+     * @return la descrizione dell'ordine, per i messaggi.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @param name il nome, senza distinzione tra maiuscole e minuscole (es. "mtime").
+     * @return il SortMode corrispondente.
+     * @throws IllegalArgumentException se il nome non corrisponde a nessun ordine.
+     */
+    public static SortMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -6,24 +6,133 @@ import org.apache.lucene.analysis.custom.CustomAnalyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.pattern.PatternReplaceCharFilterFactory;
-import org.apache.lucene.codecs.simpletext.SimpleTextCodec;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Questo programma crea un indice a partire da un insieme di file di testo
  */
 public class TextFileIndexer {
-    private final IndexWriter writer;
-    private final List<File> queue = new ArrayList<>();
+    // contenuto memorizzato e con gli offset dei termini nelle postings, per gli snippet
+    private static final FieldType CONTENUTO_CON_OFFSET = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        CONTENUTO_CON_OFFSET.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENUTO_CON_OFFSET.freeze();
+    }
+
+    /**
+     * Con gli snippet il contenuto di un documento viene letto intero in memoria prima di memorizzarlo, quindi
+     * i file più grandi vengono sempre divisi in passaggi, anche se splitAboveBytes è 0 o più grande.
+     */
+    static final long MAX_SNIPPET_DOC_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Campo (NumericDocValues) con il numero del passaggio nei documenti dei file divisi in passaggi.
+     */
+    static final String PASSAGGIO = "passaggio";
+    /**
+     * Campo (NumericDocValues) presente solo nei documenti dei file con lo stesso contenuto di un file già indicizzato,
+     * che registrano path e stato del file ma non il contenuto.
+     */
+    static final String DUPLICATO = "duplicato";
+    /**
+     * Campo (NumericDocValues) con la firma SimHash del contenuto, per raggruppare i quasi duplicati nelle ricerche.
+     */
+    static final String SIMHASH = "simhash";
+    /**
+     * Campo con tutte le cartelle che contengono il file, come termini (per restringere la ricerca a una cartella)
+     * e come SortedSetDocValues (per contare i risultati per cartella, vedi FacetCounts).
+     */
+    public static final String CARTELLA = "cartella";
+    /**
+     * Campo con l'estensione del file in minuscolo, come termine e come SortedSetDocValues.
+     */
+    public static final String ESTENSIONE = "estensione";
+
+    // un IndexWriter per shard; senza shard ce n'è uno solo, nella cartella dell'indice
+    private final IndexWriter[] writers;
+    private final IndexingPipeline pipeline;
+    private final boolean incremental;
+    private final WriterProfile profile;
+    private final long commitDocs;
+    private final long commitNanos;
+    private final int forceMergeSegments;
+    private final boolean snippets;
+    private final Charset charset;
+    private final long splitAboveBytes;
+    private final int passageChars;
+    private final Map<String, ContentExtractor> extractors;
+    // i contenuti già indicizzati in ogni shard, oppure null senza dedup
+    private final ContentDedup dedup;
+    private final AtomicLong docsSinceCommit = new AtomicLong();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private volatile long lastCommitNanos = System.nanoTime();
+
+    private final Metrics metrics = new Metrics("indexing");
+    private final LatencyHistogram documentTime = metrics.histogram("document");
+    private final LatencyHistogram commitTime = metrics.histogram("commit");
+    private final LongAdder files = metrics.counter("files");
+    private final LongAdder failures = metrics.counter("failures");
+    private final LongAdder duplicates = metrics.counter("duplicates");
+    private volatile double lastDocsPerSecond;
+
+    /**
+     * Conteggi di un aggiornamento incrementale.
+     */
+    private static class IncrementalStats {
+        final AtomicLong added = new AtomicLong();
+        final AtomicLong updated = new AtomicLong();
+        final AtomicLong unchanged = new AtomicLong();
+        // con dedup, gli hash dei file rimossi o modificati che erano indicizzati con il contenuto
+        final Set<String> removedHashes = ConcurrentHashMap.newKeySet();
+    }
 
     /**
      * Costruttore
@@ -32,41 +141,179 @@ public class TextFileIndexer {
      * @throws IOException se si verifica un errore di I/O.
      */
     TextFileIndexer(String indexDir) throws IOException {
+        this(new IndexerOptions().setIndexDir(indexDir));
+    }
+
+    /**
+     * Costruttore
+     *
+     * @param options le opzioni di indicizzazione.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    TextFileIndexer(IndexerOptions options) throws IOException {
+        Analyzer analyzer = createAnalyzer();
+
+        profile = options.getProfile();
+        commitDocs = options.getCommitDocs();
+        commitNanos = TimeUnit.SECONDS.toNanos(options.getCommitSeconds());
+        forceMergeSegments = options.getForceMergeSegments();
+        snippets = options.isSnippets();
+        charset = options.getCharset();
+        splitAboveBytes = splitAboveBytes(options);
+        passageChars = options.getPassageChars();
+        extractors = new HashMap<>(options.getExtractors());
+
+        incremental = options.isIncremental();
+        Path indexDir = new File(options.getIndexDir()).toPath();
+        int numShards = options.getNumShards();
+        if (incremental) {
+            checkShards(indexDir, numShards);
+        } else {
+            removeStaleShards(indexDir, numShards);
+        }
+        writers = new IndexWriter[numShards];
+        for (int i = 0; i < numShards; i++) {
+            FSDirectory dir = FSDirectory.open(numShards == 1 ? indexDir : Shards.shardDir(indexDir, i));
+            // IndexWriterConfig non può essere condivisa tra più IndexWriter
+            IndexWriterConfig config = new IndexWriterConfig(analyzer);
+            config.setCodec(options.getCodec().newCodec());
+            ConcurrentMergeScheduler mergeScheduler = IndexWriterMetrics.timedMergeScheduler(metrics.histogram("merge"));
+            config.setMergeScheduler(mergeScheduler);
+            config.setInfoStream(IndexWriterMetrics.flushTimeInfoStream(metrics.histogram("flush")));
+            profile.configure(config, mergeScheduler, numShards);
+            // nei segmenti ordinati la ricerca con lo stesso ordine si ferma dopo i primi k documenti
+            if (options.getIndexSort().getSort() != null) {
+                config.setIndexSort(options.getIndexSort().getSort());
+            }
+            // sostituisce l'indice già presente in indexDir, a meno di aggiornarlo in modo incrementale;
+            // con CREATE l'indice può essere ricreato anche con un ordine diverso
+            config.setOpenMode(incremental ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND
+                    : IndexWriterConfig.OpenMode.CREATE);
+            writers[i] = new IndexWriter(dir, config);
+            // il numero di shard viene salvato con ogni commit, e letto dalla ricerca con Shards.count
+            writers[i].setLiveCommitData(
+                    Collections.singletonMap(Shards.COMMIT_KEY, Integer.toString(numShards)).entrySet());
+        }
+
+        dedup = options.isDedup() ? new ContentDedup(writers, this::openText) : null;
+
+        pipeline = new IndexingPipeline(options.getNumWorkers(), options.getQueueCapacity(),
+                this::isIndexable);
+
+        metrics.gauge("docsPerSecond", () -> lastDocsPerSecond);
+        metrics.register();
+        if (options.getMetricsIntervalSeconds() > 0) {
+            metrics.startDump(options.getMetricsIntervalSeconds(), System.out);
+        }
+    }
+
+    /**
+     * @return l'Analyzer usato per indicizzare: EnglishAnalyzer per il contenuto e per i campi non previsti,
+     * un CustomAnalyzer che toglie l'estensione per il nome.
+     * @throws IOException se non è possibile creare il CustomAnalyzer.
+     */
+    public static Analyzer createAnalyzer() throws IOException {
         Map<String, Analyzer> perFieldAnalyzers = new HashMap<>();
 
         // Analyzer per il contenuto dei file di testo in lingua inglese
         perFieldAnalyzers.put("contenuto", new EnglishAnalyzer());
 
         // Analyzer per il nome dei file con un filtro per rimuovere le estensioni
-        perFieldAnalyzers.put("nome", CustomAnalyzer.builder()
-                .withTokenizer(LetterTokenizerFactory.class)
-                .addCharFilter(PatternReplaceCharFilterFactory.class, "pattern", "\\.[^.]*$", "replacement", "")
-                .build());
-
+        perFieldAnalyzers.put("nome", createNomeAnalyzer());
 
-        Analyzer analyzer = new PerFieldAnalyzerWrapper(new EnglishAnalyzer(), perFieldAnalyzers);
+        return new PerFieldAnalyzerWrapper(new EnglishAnalyzer(), perFieldAnalyzers);
+    }
 
-        FSDirectory dir = FSDirectory.open(new File(indexDir).toPath());
+    // un aggiornamento incrementale deve usare il numero di shard dell'indice esistente: con un numero diverso
+    // ogni path finirebbe in un altro shard e la copia precedente resterebbe nel vecchio
+    private static void checkShards(Path indexDir, int numShards) throws IOException {
+        int existing = Shards.count(indexDir);
+        boolean exists = existing > 0;
+        if (!exists && Files.isDirectory(indexDir)) {
+            try (FSDirectory dir = FSDirectory.open(indexDir)) {
+                exists = DirectoryReader.indexExists(dir);
+            }
+        }
+        int expected = numShards == 1 ? 0 : numShards;
+        if (exists && existing != expected) {
+            throw new IllegalArgumentException("L'indice in " + indexDir + " ha " + Math.max(existing, 1)
+                    + " shard, non " + numShards + ": per cambiare il numero di shard va ricreato");
+        }
+    }
 
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setCodec(new SimpleTextCodec());
-        writer = new IndexWriter(dir, config);
+    // ricreando l'indice si tolgono gli shard oltre numShards e, se l'indice ora è diviso in shard,
+    // i documenti dell'indice non diviso in indexDir, che la ricerca altrimenti continuerebbe a vedere
+    private static void removeStaleShards(Path indexDir, int numShards) throws IOException {
+        IOUtils.rm(Shards.dirsFrom(indexDir, numShards == 1 ? 0 : numShards).toArray(new Path[0]));
+        if (numShards > 1 && Files.isDirectory(indexDir)) {
+            try (FSDirectory dir = FSDirectory.open(indexDir)) {
+                if (DirectoryReader.indexExists(dir)) {
+                    IndexWriterConfig config = new IndexWriterConfig()
+                            .setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                    try (IndexWriter writer = new IndexWriter(dir, config)) {
+                        writer.commit();
+                    }
+                }
+            }
+        }
+    }
 
-        // cancella l'indice già presente in indexDir
-        writer.deleteAll();
+    /**
+     * @return l'Analyzer del campo nome: divide il nome in parole dopo aver tolto l'estensione.
+     * @throws IOException se non è possibile creare il CustomAnalyzer.
+     */
+    public static Analyzer createNomeAnalyzer() throws IOException {
+        return CustomAnalyzer.builder()
+                .withTokenizer(LetterTokenizerFactory.class)
+                .addCharFilter(PatternReplaceCharFilterFactory.class, "pattern", "\\.[^.]*$", "replacement", "")
+                .build();
     }
 
-    public static void main(String[] args) throws IOException {
-        System.out.println("L'indice viene creato nella cartella /tmp/index");
+    public static void main(String[] args) throws IOException, InterruptedException {
+        IndexerOptions options = IndexerOptions.parse(args);
+        if (!options.getWatchRoots().isEmpty()) {
+            // l'indice viene tenuto allineato alle cartelle, anche tra un'esecuzione e l'altra
+            options.setIncremental(true);
+        }
+        System.out.println("L'indice viene creato nella cartella " + options.getIndexDir());
+        System.out.println("Thread di indicizzazione: " + options.getNumWorkers());
+        System.out.println("Codec: " + options.getCodec());
+        if (options.getNumShards() > 1) {
+            System.out.println("Shard: " + options.getNumShards());
+        }
+        if (options.isSnippets()) {
+            System.out.println("Contenuto memorizzato per gli snippet");
+        }
+        System.out.println("Codifica dei file: " + (options.getCharset() == null ? "riconosciuta da ogni file"
+                : options.getCharset().name()));
+        System.out.println("Formati indicizzati: " + options.getExtractors().keySet());
+        if (options.isDedup()) {
+            System.out.println("I file con lo stesso contenuto vengono indicizzati una volta sola");
+        }
+        if (options.getIndexSort().getSort() != null) {
+            System.out.println("Indice ordinato per " + options.getIndexSort().getDescription());
+        }
+        if (splitAboveBytes(options) > 0) {
+            System.out.println("File oltre " + splitAboveBytes(options) + " byte divisi in passaggi di "
+                    + options.getPassageChars() + " caratteri");
+        }
+        System.out.println("Profilo: " + options.getProfile() + " (commit ogni " + options.getCommitDocs()
+                + " documenti o " + options.getCommitSeconds() + " secondi)");
+        if (options.isIncremental()) {
+            System.out.println("Aggiornamento incrementale dell'indice esistente");
+        }
 
-        String indexLocation = "tmp/index";
         TextFileIndexer indexer = null;
         try {
-            indexer = new TextFileIndexer(indexLocation);
+            indexer = new TextFileIndexer(options);
         } catch (Exception ex) {
             System.out.println("Errore nella creazione dell'indice: " + ex.getMessage());
             System.exit(-1);
         }
+        if (!options.getWatchRoots().isEmpty()) {
+            watch(indexer, options);
+            return;
+        }
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
 
         String s = "";
@@ -94,79 +341,650 @@ public class TextFileIndexer {
     }
 
     /**
-     * Indicizza un file o una cartella
+     * Modalità daemon: aggiorna l'indice con le cartelle da osservare, poi applica le modifiche ai file
+     * man mano che avvengono, senza visitare di nuovo le cartelle. Se searchPort è indicata avvia un server
+     * di ricerca sui reader near-real-time, che vede le modifiche entro circa debounce + nrtRefresh millisecondi
+     * anche prima del commit. Termina con l'interruzione del processo, dopo aver chiuso l'indice.
+     */
+    private static void watch(TextFileIndexer indexer, IndexerOptions options)
+            throws IOException, InterruptedException {
+        List<Path> roots = new ArrayList<>();
+        for (String root : options.getWatchRoots()) {
+            roots.add(Paths.get(root).toAbsolutePath());
+        }
+        // il watcher viene registrato prima della visita, così non si perdono le modifiche fatte nel frattempo
+        DirectoryWatcher watcher = new DirectoryWatcher(roots, options.getDebounceMillis());
+        for (Path root : roots) {
+            indexer.indexFileOrDirectory(root.toString());
+        }
+
+        SearchService service = null;
+        SearchServer server = null;
+        if (options.getSearchPort() > 0) {
+            SearchOptions searchOptions = new SearchOptions().setPort(options.getSearchPort())
+                    .setRefreshMillis(options.getNrtRefreshMillis()).setQueryLog(options.getSearchQueryLog());
+            service = new SearchService(searchOptions, indexer);
+            server = new SearchServer(service, searchOptions);
+            System.out.println("Server di ricerca in ascolto su http://localhost:" + server.getPort() + "/search?q=");
+        }
+
+        // alla chiusura del processo si chiude il watcher, invece di interrompere il thread che potrebbe
+        // essere in mezzo a una scrittura, e si aspetta che l'indice venga chiuso
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.close();
+                main.join();
+            } catch (IOException | InterruptedException e) {
+                System.out.println("Errore nella chiusura: " + e.getMessage());
+            }
+        }));
+
+        System.out.println("Osservo le cartelle " + roots);
+        try {
+            while (true) {
+                DirectoryWatcher.Batch batch = watcher.next();
+                if (batch.overflow) {
+                    System.out.println("Eventi persi, le cartelle vengono visitate di nuovo");
+                    for (Path root : roots) {
+                        indexer.indexFileOrDirectory(root.toString());
+                    }
+                } else if (!batch.isEmpty()) {
+                    indexer.applyChanges(batch.changed, batch.deleted);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // chiusura del processo
+        } finally {
+            watcher.close();
+            if (server != null) {
+                server.close();
+            }
+            if (service != null) {
+                service.close();
+            }
+            indexer.closeIndex();
+        }
+    }
+
+    /**
+     * @return un manager di searcher sui reader near-real-time degli IndexWriter, che vedono anche le modifiche
+     * non ancora salvate con un commit; va riaperto con maybeRefresh() e chiuso da chi lo usa.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    ReferenceManager<IndexSearcher> newSearcherManager() throws IOException {
+        return newSearcherManager(new SearcherFactory());
+    }
+
+    /**
+     * @param factory crea i searcher a ogni apertura e riapertura, ad esempio riscaldandoli con alcune query.
+     * @return un manager di searcher sui reader near-real-time degli IndexWriter, come newSearcherManager().
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    ReferenceManager<IndexSearcher> newSearcherManager(SearcherFactory factory) throws IOException {
+        return writers.length == 1
+                ? new SearcherManager(writers[0], factory)
+                : new ShardedSearcherManager(writers, factory);
+    }
+
+    /**
+     * Applica all'indice le modifiche ai file segnalate da DirectoryWatcher, senza visitare di nuovo le cartelle:
+     * i file creati o modificati vengono aggiornati con updateDocument sul termine path (quelli invariati vengono
+     * saltati), i path cancellati rimossi insieme ai file che contenevano, se erano cartelle.
+     * Il commit segue il profilo (ogni commitDocs documenti o commitSeconds secondi).
+     *
+     * @param changed i file o le cartelle creati o modificati.
+     * @param deleted i file o le cartelle cancellati.
+     * @throws IOException se si verifica un errore di I/O.
+     */
+    void applyChanges(Collection<Path> changed, Collection<Path> deleted) throws IOException {
+        long startTime = System.nanoTime();
+        IncrementalStats counts = new IncrementalStats();
+        List<Query> deletes = new ArrayList<>();
+        for (Path path : deleted) {
+            // un path cancellato può essere una cartella, i cui file stanno in tutti gli shard
+            deletes.add(new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("path", path.toString())), BooleanClause.Occur.SHOULD)
+                    .add(new PrefixQuery(new Term("path", path + File.separator)), BooleanClause.Occur.SHOULD)
+                    .build());
+        }
+        if (dedup != null && !deletes.isEmpty()) {
+            // il contenuto dei file rimossi può servire alle loro copie
+            dedup.collectIndexedHashes(deletes, counts.removedHashes);
+        }
+        for (Query query : deletes) {
+            for (IndexWriter writer : writers) {
+                writer.deleteDocuments(query);
+            }
+        }
+
+        DirectoryReader[] snapshots = new DirectoryReader[writers.length];
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                snapshots[i] = DirectoryReader.open(writers[i]);
+            }
+            IndexingPipeline.FileHandler update = timed(file -> {
+                int shard = shardOf(file);
+                updateFile(shard, snapshots[shard], file, counts);
+            });
+            for (Path path : changed) {
+                try {
+                    if (Files.isDirectory(path)) {
+                        // cartella creata o spostata sotto una di quelle osservate
+                        pipeline.run(path, update);
+                    } else if (Files.isRegularFile(path) && isIndexable(path)) {
+                        update.handle(path);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // il file può essere stato cancellato subito dopo l'evento, o essere illeggibile per
+                    // l'estrattore o per l'analisi: come nella visita, si segnala e si passa al successivo
+                    System.out.println("Non può essere aggiunto: " + path + " (" + e.getMessage() + ")");
+                }
+            }
+        } finally {
+            IOUtils.close(snapshots);
+        }
+        long promoted = promoteCopies(counts.removedHashes);
+        maybeCommit();
+
+        System.out.println(counts.added + " documenti aggiunti, " + counts.updated + " aggiornati, "
+                + counts.unchanged + " invariati, " + deleted.size() + " path rimossi in "
+                + (System.nanoTime() - startTime) / 1000000 + " millisecondi."
+                + (promoted > 0 ? " Contenuto reindicizzato da " + promoted + " copie." : ""));
+    }
+
+    /**
+     * Indicizza un file o una cartella.
+     * La cartella viene visitata in modo lazy e i file vengono indicizzati in parallelo
+     * da più thread che condividono lo stesso IndexWriter, o con gli shard gli IndexWriter degli shard.
+     * In modalità incrementale i file non modificati vengono saltati, quelli modificati aggiornati
+     * e quelli non più presenti sotto fileName rimossi dall'indice.
      *
      * @param fileName il nome del file o della cartella che si vuole indicizzare
      * @throws IOException when exception
      */
     public void indexFileOrDirectory(String fileName) throws IOException {
-        long startTime, endTime;
-        startTime = System.nanoTime();
-        addFiles(new File(fileName));
-        int originalNumDocs = writer.getDocStats().numDocs;
-
-        // ciclo per scorrere tutti i file presenti in queue
-        for (File f : queue) {
-            FileReader fr = null;
-            try {
-                Document doc = new Document();
+        Path root = Paths.get(fileName);
+        if (incremental) {
+            updateFileOrDirectory(root);
+            return;
+        }
+        int originalNumDocs = numDocs();
+        long originalDuplicates = duplicates.sum();
 
-                fr = new FileReader(f);
-                // Aggiunge il contenuto, il nome ed il percorso del file
-                doc.add(new TextField("contenuto", fr));
-                doc.add(new TextField("nome", f.getName(), Field.Store.YES));
-                doc.add(new StringField("path", f.getPath(), Field.Store.YES));
+        IndexingPipeline.Stats stats = pipeline.run(root, timed(file -> addFile(shardOf(file), file, false)));
 
-                writer.addDocument(doc);
-                //System.out.println("Aggiunto: " + f);
-            } catch (Exception e) {
-                System.out.println("Non può essere aggiunto: " + f);
-                System.out.println(e.getMessage());
-            } finally {
-                if(fr != null) {
-                    fr.close();
-                }
+        int newNumDocs = numDocs();
+        System.out.println("************************");
+        System.out.println((newNumDocs - originalNumDocs) + " documenti aggiunti.");
+        if (dedup != null) {
+            System.out.println((duplicates.sum() - originalDuplicates) + " file con lo stesso contenuto di un altro,"
+                    + " indicizzati senza contenuto.");
+        }
+        printStats(stats);
+        System.out.println("************************");
+
+        if (profile.isCommitAfterEachDirectory()) {
+            commit();
+        }
+    }
+
+    private void updateFileOrDirectory(Path root) throws IOException {
+        IncrementalStats counts = new IncrementalStats();
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        IndexingPipeline.Stats stats;
+        long deleted;
+
+        // fotografia di ogni shard prima dell'aggiornamento, usata per confrontare lo stato dei file
+        DirectoryReader[] snapshots = new DirectoryReader[writers.length];
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                snapshots[i] = DirectoryReader.open(writers[i]);
             }
+            stats = pipeline.run(root, timed(file -> {
+                seen.add(file.toString());
+                int shard = shardOf(file);
+                updateFile(shard, snapshots[shard], file, counts);
+            }));
+            deleted = 0;
+            for (int i = 0; i < writers.length; i++) {
+                deleted += deleteMissing(writers[i], snapshots[i], root.toString(), seen, counts.removedHashes);
+            }
+        } finally {
+            IOUtils.close(snapshots);
         }
-        endTime = System.nanoTime();
+        long promoted = promoteCopies(counts.removedHashes);
 
-        int newNumDocs = writer.getDocStats().numDocs;
         System.out.println("************************");
-        System.out.println((newNumDocs - originalNumDocs) + " documenti aggiunti.");
-        System.out.println("Indicizzazione completata in " + (endTime - startTime)/1000000 + " millisecondi.");
+        System.out.println(counts.added + " documenti aggiunti, " + counts.updated + " aggiornati, "
+                + counts.unchanged + " invariati, " + deleted + " rimossi.");
+        if (promoted > 0) {
+            System.out.println("Contenuto reindicizzato da " + promoted + " copie di file rimossi o modificati.");
+        }
+        printStats(stats);
         System.out.println("************************");
 
-        writer.commit();
-        queue.clear();
+        if (profile.isCommitAfterEachDirectory()) {
+            commit();
+        }
+    }
+
+    // misura il tempo di ogni file e conta documenti e fallimenti
+    private IndexingPipeline.FileHandler timed(IndexingPipeline.FileHandler handler) {
+        return file -> {
+            long startTime = System.nanoTime();
+            try {
+                handler.handle(file);
+                files.increment();
+                docsSinceCommit.incrementAndGet();
+                maybeCommit();
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                throw e;
+            } finally {
+                documentTime.record(System.nanoTime() - startTime);
+            }
+        };
     }
 
-    private void addFiles(File file) {
+    private int shardOf(Path file) {
+        return writers.length == 1 ? 0 : Shards.shardOf(file.toString(), writers.length);
+    }
 
-        if (!file.exists()) {
-            System.out.println(file + " non esiste.");
+    private int numDocs() {
+        int numDocs = 0;
+        for (IndexWriter writer : writers) {
+            numDocs += writer.getDocStats().numDocs;
         }
-        if (file.isDirectory()) {
-            for (File f : Objects.requireNonNull(file.listFiles())) {
-                addFiles(f);
+        return numDocs;
+    }
+
+    /**
+     * Fa commit se sono stati indicizzati commitDocs documenti o sono passati commitNanos dall'ultimo commit.
+     * Il commit viene fatto da un solo worker, mentre gli altri continuano a indicizzare.
+     */
+    private void maybeCommit() throws IOException {
+        if (isCommitDue() && commitLock.tryLock()) {
+            try {
+                // un altro worker può aver appena fatto commit
+                if (isCommitDue()) {
+                    commit();
+                }
+            } finally {
+                commitLock.unlock();
             }
+        }
+    }
+
+    private boolean isCommitDue() {
+        return (commitDocs > 0 && docsSinceCommit.get() >= commitDocs)
+                || (commitNanos > 0 && System.nanoTime() - lastCommitNanos >= commitNanos);
+    }
+
+    private void commit() throws IOException {
+        long startTime = System.nanoTime();
+        docsSinceCommit.set(0);
+        for (IndexWriter writer : writers) {
+            writer.commit();
+        }
+        lastCommitNanos = System.nanoTime();
+        commitTime.record(lastCommitNanos - startTime);
+    }
+
+    private void printStats(IndexingPipeline.Stats stats) {
+        lastDocsPerSecond = stats.docsPerSecond();
+        if (stats.failures > 0) {
+            System.out.println(stats.failures + " file non indicizzati.");
+        }
+        System.out.println("Indicizzazione completata in " + stats.elapsedNanos/1000000 + " millisecondi ("
+                + String.format("%.1f", stats.docsPerSecond()) + " documenti/s).");
+    }
+
+    /**
+     * Aggiorna nello shard del file un singolo file confrontandolo con lo stato registrato in snapshot.
+     * Può essere chiamato da più thread.
+     */
+    private void updateFile(int shard, DirectoryReader snapshot, Path file, IncrementalStats counts)
+            throws IOException {
+        IndexWriter writer = writers[shard];
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long mtime = attrs.lastModifiedTime().toMillis();
+        Term pathTerm = new Term("path", file.toString());
+        FileState state = FileState.lookup(snapshot, pathTerm);
+
+        if (state == null) {
+            addFile(shard, file, true);
+            counts.added.incrementAndGet();
+        } else if (state.mtime == mtime && state.size == attrs.size()) {
+            counts.unchanged.incrementAndGet();
+        } else if (state.size == attrs.size() && !state.hash.isEmpty() && state.hash.equals(FileState.hash(file))) {
+            // contenuto identico: basta aggiornare la data di modifica senza rianalizzare il file
+            // (un indice creato senza --incremental né --dedup non ha gli hash, e il file viene reindicizzato)
+            writer.updateNumericDocValue(pathTerm, "mtime", mtime);
+            counts.unchanged.incrementAndGet();
         } else {
-            String filename = file.getName().toLowerCase();
-            // ===================================================
-            // Indicizza i file che terminano per .txt
-            // ===================================================
-            //if (filename.endsWith(".html") || filename.endsWith(".txt")) {
-            if (filename.endsWith(".txt")) {
-                queue.add(file);
+            if (!state.duplicate) {
+                counts.removedHashes.add(state.hash);
+            }
+            addFile(shard, file, true);
+            counts.updated.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rimuove da uno shard i file sotto root che non sono stati visti durante la visita.
+     *
+     * @param removedHashes dove aggiungere gli hash dei file rimossi che erano indicizzati con il contenuto.
+     * @return il numero di file rimossi.
+     */
+    private static long deleteMissing(IndexWriter writer, DirectoryReader snapshot, String root, Set<String> seen,
+                                      Set<String> removedHashes) throws IOException {
+        Terms terms = MultiTerms.getTerms(snapshot, "path");
+        if (terms == null) {
+            return 0;
+        }
+        Bits liveDocs = MultiBits.getLiveDocs(snapshot);
+        long deleted = 0;
+        TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        if (termsEnum.seekCeil(new BytesRef(root)) == TermsEnum.SeekStatus.END) {
+            return 0;
+        }
+        for (BytesRef term = termsEnum.term(); term != null; term = termsEnum.next()) {
+            String path = term.utf8ToString();
+            if (!path.startsWith(root)) {
+                break;
+            }
+            boolean underRoot = path.length() == root.length() || path.startsWith(File.separator, root.length());
+            if (!underRoot || seen.contains(path)) {
+                continue;
+            }
+            postings = termsEnum.postings(postings, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    Term pathTerm = new Term("path", path);
+                    FileState state = FileState.lookup(snapshot, pathTerm);
+                    if (state != null && !state.duplicate) {
+                        removedHashes.add(state.hash);
+                    }
+                    writer.deleteDocuments(pathTerm);
+                    deleted++;
+                    break;
+                }
             }
         }
+        return deleted;
+    }
+
+    /**
+     * Aggiunge i documenti di un file. Con dedup, se lo shard contiene già un file con lo stesso contenuto
+     * viene aggiunto solo un documento con path e stato del file (vedi ContentDedup); altrimenti il file
+     * viene indicizzato con il contenuto (vedi addContent). Può essere chiamato da più thread.
+     *
+     * @param replace se true vengono prima rimossi i documenti già presenti con lo stesso path.
+     */
+    private void addFile(int shard, Path file, boolean replace) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        IndexWriter writer = writers[shard];
+        if (dedup == null) {
+            // senza dedup l'hash serve solo all'aggiornamento incrementale, e addContent lo calcola se serve
+            addContent(writer, file, attrs, null, 0, replace);
+            return;
+        }
+        ContentDedup.Fingerprint fingerprint = dedup.fingerprint(file);
+        String hash = fingerprint.hash;
+        if (dedup.claim(shard, hash)) {
+            try {
+                addContent(writer, file, attrs, hash, fingerprint.signature, replace);
+            } catch (IOException | RuntimeException e) {
+                // il contenuto non è nell'indice, il prossimo file con questo hash lo indicizzerà
+                dedup.release(shard, hash);
+                throw e;
+            }
+            return;
+        }
+        Document doc = ContentDedup.createCopy(file.toString(), file.getFileName().toString(),
+                attrs.lastModifiedTime().toMillis(), attrs.size(), hash);
+        if (replace) {
+            writer.updateDocument(new Term("path", file.toString()), doc);
+        } else {
+            writer.addDocument(doc);
+        }
+        duplicates.increment();
+    }
+
+    /**
+     * Con dedup, indicizza con il contenuto una delle copie rimaste dei file rimossi o modificati
+     * (vedi ContentDedup.promoteCopies).
+     *
+     * @return il numero di copie indicizzate con il contenuto.
+     */
+    private long promoteCopies(Set<String> removedHashes) throws IOException {
+        if (dedup == null) {
+            return 0;
+        }
+        return dedup.promoteCopies(removedHashes, (shard, copy, fingerprint) -> addContent(writers[shard], copy,
+                Files.readAttributes(copy, BasicFileAttributes.class), fingerprint.hash, fingerprint.signature, true));
     }
 
     /**
-     * Chiude l'indice.
+     * Indicizza un file con il contenuto: un solo documento, oppure uno per passaggio se il file supera
+     * splitAboveBytes. Il testo viene letto da un FileChannel nella codifica indicata o riconosciuta e passa
+     * dall'estrattore del formato del file, senza mai tenere in memoria più di un passaggio.
+     * Con dedup ai documenti non divisi in passaggi si aggiunge la firma SimHash del testo.
+     *
+     * @param hash      l'hash del contenuto, oppure null per calcolarlo solo se serve all'aggiornamento incrementale:
+     *                  con gli snippet nella stessa lettura del contenuto, altrimenti prima di indicizzarlo.
+     * @param signature la firma SimHash del testo (vedi ContentDedup.fingerprint), usata solo con dedup.
+     */
+    private void addContent(IndexWriter writer, Path file, BasicFileAttributes attrs, String hash, long signature,
+                            boolean replace) throws IOException {
+        String path = file.toString();
+        String nome = file.getFileName().toString();
+        long mtime = attrs.lastModifiedTime().toMillis();
+        Term pathTerm = new Term("path", path);
+
+        if (splitAboveBytes <= 0 || attrs.size() <= splitAboveBytes) {
+            Document doc;
+            if (snippets) {
+                // il contenuto viene letto prima di creare il documento, quindi l'hash può essere calcolato insieme
+                FileState.Hasher hasher = hash == null && incremental ? new FileState.Hasher() : null;
+                // un buffer pieno prima della fine del testo viene tagliato all'ultimo spazio (vedi PassageReader),
+                // quindi si legge fino alla fine anche se di solito basta un passaggio
+                StringBuilder content = new StringBuilder();
+                try (PassageReader passages = new PassageReader(openText(file, hasher),
+                        passageBuffer(attrs.size()))) {
+                    for (String passage = passages.next(); passage != null; passage = passages.next()) {
+                        content.append(passage);
+                    }
+                    if (hasher != null) {
+                        hash = hasher.hash();
+                    }
+                }
+                doc = createDocument(path, nome, content.toString(), mtime, attrs.size(), hash);
+            } else {
+                // il contenuto viene letto da IndexWriter durante l'analisi, dopo aver ricevuto il documento
+                // con l'hash; il CharFilter dell'estrattore diventa il primo passo dell'analisi
+                if (hash == null && incremental) {
+                    hash = FileState.hash(file);
+                }
+                doc = createDocument(path, nome, openText(file), mtime, attrs.size(), hash);
+            }
+            if (dedup != null) {
+                ContentDedup.addSignature(doc, signature);
+            }
+            if (replace) {
+                writer.updateDocument(pathTerm, doc);
+            } else {
+                writer.addDocument(doc);
+            }
+            return;
+        }
+
+        // i passaggi vengono aggiunti uno alla volta e non come blocco con updateDocuments,
+        // perché IndexWriter non può fare flush a metà di un blocco e lo terrebbe tutto in memoria
+        if (replace) {
+            writer.deleteDocuments(pathTerm);
+        }
+        // ogni passaggio ha l'hash dell'intero file, che va calcolato prima di aggiungere il primo
+        if (hash == null && incremental) {
+            hash = FileState.hash(file);
+        }
+        try (PassageReader passages = new PassageReader(openText(file), passageChars)) {
+            int n = 0;
+            for (String passage = passages.next(); passage != null; passage = passages.next()) {
+                writer.addDocument(createPassage(path, nome, passage, n++, mtime, attrs.size(), hash));
+            }
+        }
+    }
+
+    /**
+     * Come createDocument con un Reader, ma il contenuto viene anche memorizzato e indicizzato con gli offset
+     * dei termini, per gli snippet (vedi SnippetHighlighter).
+     */
+    public static Document createDocument(String path, String nome, String contenuto, long mtime, long size,
+                                          String hash) {
+        return createDocument(path, nome, new Field("contenuto", contenuto, CONTENUTO_CON_OFFSET), mtime, size, hash);
+    }
+
+    /**
+     * Crea il documento con i campi usati dall'indice, anche per contenuti che non vengono da un file
+     * (ad esempio i corpus sintetici dei benchmark).
+     *
+     * @param path      il percorso del file.
+     * @param nome      il nome del file.
+     * @param contenuto il contenuto, letto durante l'indicizzazione.
+     * @param mtime     la data di ultima modifica in millisecondi.
+     * @param size      la dimensione in byte.
+     * @param hash      l'hash del contenuto, oppure null se non serve.
+     * @return il documento.
+     */
+    public static Document createDocument(String path, String nome, Reader contenuto, long mtime, long size,
+                                          String hash) {
+        return createDocument(path, nome, new TextField("contenuto", contenuto), mtime, size, hash);
+    }
+
+    // il testo da indicizzare di un file, estratto in streaming secondo l'estensione
+    private Reader openText(Path file) throws IOException {
+        return openText(file, null);
+    }
+
+    private Reader openText(Path file, FileState.Hasher hasher) throws IOException {
+        ContentExtractor extractor = extractors.get(ContentExtractor.extension(file.getFileName().toString()));
+        return extractor.extract(PassageReader.open(file, charset, hasher));
+    }
+
+    // la dimensione oltre la quale i file vengono divisi in passaggi, al massimo MAX_SNIPPET_DOC_BYTES con gli snippet
+    private static long splitAboveBytes(IndexerOptions options) {
+        long splitAboveBytes = options.getSplitAboveBytes();
+        if (options.isSnippets() && (splitAboveBytes <= 0 || splitAboveBytes > MAX_SNIPPET_DOC_BYTES)) {
+            return MAX_SNIPPET_DOC_BYTES;
+        }
+        return splitAboveBytes;
+    }
+
+    // un file decodificato non ha più caratteri che byte, e con un carattere in più la fine del testo
+    // arriva prima che il buffer sia pieno; con gli snippet un file non diviso in passaggi non supera
+    // MAX_SNIPPET_DOC_BYTES
+    private static int passageBuffer(long size) {
+        return (int) Math.min(Math.max(1, size) + 1, MAX_SNIPPET_DOC_BYTES + 1);
+    }
+
+    /**
+     * Crea il documento di un passaggio di un file grande. Tutti i passaggi hanno il path e lo stato del file,
+     * così vengono aggiornati e rimossi insieme; solo il primo ha il nome, che conta una volta per file.
+     *
+     * @param passaggio il numero del passaggio nel file, da 0.
+     */
+    private Document createPassage(String path, String nome, String contenuto, int passaggio, long mtime,
+                                   long size, String hash) {
+        Field field = snippets
+                ? new Field("contenuto", contenuto, CONTENUTO_CON_OFFSET)
+                : new TextField("contenuto", contenuto, Field.Store.NO);
+        Document doc;
+        if (passaggio == 0) {
+            doc = createDocument(path, nome, field, mtime, size, hash);
+        } else {
+            doc = new Document();
+            doc.add(field);
+            addFileFields(doc, path, mtime, size, hash);
+        }
+        doc.add(new NumericDocValuesField(PASSAGGIO, passaggio));
+        return doc;
+    }
+
+    private static Document createDocument(String path, String nome, Field contenuto, long mtime, long size,
+                                           String hash) {
+        Document doc = new Document();
+        // Aggiunge il contenuto, il nome ed il percorso del file
+        doc.add(contenuto);
+        doc.add(new TextField("nome", nome, Field.Store.YES));
+        // nome anche come DocValues, per contare i file per nome senza leggere i campi memorizzati
+        doc.add(new SortedDocValuesField("nome", new BytesRef(nome)));
+        addFileFields(doc, path, mtime, size, hash);
+        return doc;
+    }
+
+    // path e stato del file, comuni al documento di un file e a tutti i suoi passaggi
+    static void addFileFields(Document doc, String path, long mtime, long size, String hash) {
+        doc.add(new StringField("path", path, Field.Store.YES));
+        // path anche come DocValues, per mostrare i risultati senza leggere i campi memorizzati
+        doc.add(new SortedDocValuesField("path", new BytesRef(path)));
+
+        // stato del file, usato dall'indicizzazione incrementale
+        doc.add(new NumericDocValuesField("mtime", mtime));
+        doc.add(new NumericDocValuesField("size", size));
+        // senza aggiornamento incrementale né dedup l'hash non viene calcolato
+        if (hash != null) {
+            doc.add(new StringField("hash", hash, Field.Store.NO));
+            doc.add(new BinaryDocValuesField("hash", new BytesRef(hash)));
+        }
+
+        // cartelle ed estensione, derivate dal path, per i conteggi dei risultati e per restringere la ricerca
+        Path file = Paths.get(path);
+        for (Path dir = file.getParent(); dir != null; dir = dir.getParent()) {
+            addFacetField(doc, CARTELLA, dir.toString());
+        }
+        String extension = ContentExtractor.extension(file.getFileName().toString());
+        if (!extension.isEmpty()) {
+            addFacetField(doc, ESTENSIONE, extension);
+        }
+    }
+
+    private static void addFacetField(Document doc, String name, String value) {
+        doc.add(new StringField(name, value, Field.Store.NO));
+        doc.add(new SortedSetDocValuesField(name, new BytesRef(value)));
+    }
+
+    // indicizza i file per la cui estensione c'è un estrattore (di default .txt, .html, .xml, .md, ...)
+    private boolean isIndexable(Path file) {
+        return extractors.containsKey(ContentExtractor.extension(file.getFileName().toString()));
+    }
+
+    /**
+     * @return le metriche dell'indicizzazione: file elaborati, fallimenti, documenti al secondo
+     * e tempi per documento, di flush, merge e commit.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Chiude l'indice, dopo averlo unito in forceMergeSegments segmenti se richiesto.
      *
      * @throws IOException when exception closing
      */
     public void closeIndex() throws IOException {
-        writer.close();
+        metrics.close();
+        if (forceMergeSegments > 0) {
+            long startTime = System.nanoTime();
+            for (IndexWriter writer : writers) {
+                writer.forceMerge(forceMergeSegments);
+            }
+            System.out.println("Indice unito in " + forceMergeSegments + " segmenti in "
+                    + (System.nanoTime() - startTime) / 1000000 + " millisecondi.");
+        }
+        // la chiusura fa il commit di quanto non ancora salvato
+        IOUtils.close(writers);
     }
 }
\ No newline at end of file
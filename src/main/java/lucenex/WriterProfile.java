@@ -0,0 +1,106 @@
+package lucenex;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * Configurazione di IndexWriter (buffer, merge e frequenza dei commit) adatta a un tipo di carico.
+ * Con più shard la memoria e i thread di merge vengono divisi tra gli IndexWriter.
+ */
+public enum WriterProfile {
+    /**
+     * Caricamento iniziale di molti file: buffer grande per avere pochi flush di segmenti grandi,
+     * merge senza limiti di I/O su più thread, segmenti che si accumulano più a lungo prima di un merge
+     * e commit rari, perché finché il caricamento non termina non serve che l'indice sia visibile.
+     */
+    BULK_LOAD(256, 200_000, 300, false) {
+        @Override
+        void configure(IndexWriterConfig config, ConcurrentMergeScheduler mergeScheduler, int numShards) {
+            super.configure(config, mergeScheduler, numShards);
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2 / numShards);
+            mergeScheduler.setMaxMergesAndThreads(threads + 4, threads);
+            mergeScheduler.disableAutoIOThrottle();
+
+            // solo aggiunte: non ci sono cancellazioni da recuperare, conviene fare merge più ampi e più rari
+            TieredMergePolicy mergePolicy = new TieredMergePolicy();
+            mergePolicy.setSegmentsPerTier(20);
+            mergePolicy.setMaxMergeAtOnce(20);
+            mergePolicy.setFloorSegmentMB(64);
+            // i file compound costano una copia in più di ogni segmento
+            mergePolicy.setNoCFSRatio(0);
+            config.setMergePolicy(mergePolicy);
+            config.setUseCompoundFile(false);
+        }
+    },
+    /**
+     * Aggiornamenti incrementali: buffer piccolo, merge in background con I/O limitato per non disturbare
+     * le ricerche, merge che recuperano presto lo spazio dei documenti aggiornati e commit frequenti
+     * dopo ogni cartella, così le modifiche diventano visibili in fretta.
+     */
+    STEADY_STATE(32, 1000, 10, true) {
+        @Override
+        void configure(IndexWriterConfig config, ConcurrentMergeScheduler mergeScheduler, int numShards) {
+            super.configure(config, mergeScheduler, numShards);
+            mergeScheduler.enableAutoIOThrottle();
+
+            TieredMergePolicy mergePolicy = new TieredMergePolicy();
+            mergePolicy.setDeletesPctAllowed(20);
+            config.setMergePolicy(mergePolicy);
+        }
+    };
+
+    private final int ramBufferMB;
+    private final long commitDocs;
+    private final long commitSeconds;
+    private final boolean commitAfterEachDirectory;
+
+    WriterProfile(int ramBufferMB, long commitDocs, long commitSeconds, boolean commitAfterEachDirectory) {
+        this.ramBufferMB = ramBufferMB;
+        this.commitDocs = commitDocs;
+        this.commitSeconds = commitSeconds;
+        this.commitAfterEachDirectory = commitAfterEachDirectory;
+    }
+
+    /**
+     * Applica il profilo alla configurazione di uno degli IndexWriter.
+     *
+     * @param config         la configurazione.
+     * @param mergeScheduler il merge scheduler già impostato nella configurazione.
+     * @param numShards      il numero di IndexWriter che condividono memoria e thread.
+     */
+    void configure(IndexWriterConfig config, ConcurrentMergeScheduler mergeScheduler, int numShards) {
+        config.setRAMBufferSizeMB(Math.max(16, ramBufferMB / numShards));
+    }
+
+    /**
+     * @return dopo quanti documenti fare commit, se non indicato nelle opzioni.
+     */
+    public long getCommitDocs() {
+        return commitDocs;
+    }
+
+    /**
+     * @return dopo quanti secondi dall'ultimo commit farne un altro, se non indicato nelle opzioni.
+     */
+    public long getCommitSeconds() {
+        return commitSeconds;
+    }
+
+    /**
+     * @return true se fare commit alla fine di ogni cartella indicizzata; altrimenti il commit finale
+     * avviene alla chiusura dell'indice.
+     */
+    public boolean isCommitAfterEachDirectory() {
+        return commitAfterEachDirectory;
+    }
+
+    /**
+     * @param name il nome del profilo, senza distinzione tra maiuscole e minuscole (es. "bulk_load").
+     * @return il WriterProfile corrispondente.
+     * @throws IllegalArgumentException se il nome non corrisponde a nessun profilo.
+     */
+    public static WriterProfile fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
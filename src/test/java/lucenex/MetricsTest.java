@@ -0,0 +1,63 @@
+package lucenex;
+
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for LatencyHistogram and Metrics
+ */
+public class MetricsTest {
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_000, histogram.getPercentileNanos(0.5), 500_000 / 16.0);
+        assertEquals(990_000, histogram.getPercentileNanos(0.99), 990_000 / 16.0);
+        assertEquals(1_000_000, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void testBucketsAreMonotonic() {
+        long previous = -1;
+        for (int i = 0; i < 960; i++) {
+            long value = LatencyHistogram.bucketValue(i);
+            assertTrue(value > previous);
+            assertEquals(i, LatencyHistogram.bucketIndex(value));
+            previous = value;
+        }
+    }
+
+    @Test
+    public void testIndexingMetricsOverJmx() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        for (int i = 0; i < 20; i++) {
+            Files.write(docs.resolve("file" + i + ".txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+        }
+        // STEADY_STATE fa commit alla fine di ogni cartella
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setProfile(WriterProfile.STEADY_STATE));
+        try {
+            indexer.indexFileOrDirectory(docs.toString());
+            Object files = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName("lucenex:type=indexing"), "files");
+            assertEquals(20L, files);
+            assertEquals(1, indexer.getMetrics().histogram("commit").getCount());
+            assertTrue(indexer.getMetrics().histogram("flush").getCount() > 0);
+        } finally {
+            indexer.closeIndex();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package lucenex;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for QueryResultCache
+ */
+public class QueryResultCacheTest {
+
+    private static SearchResult result(String path) {
+        return new SearchResult(Collections.singletonList(new SearchResult.Hit(path, 1f)), 1, false, false, 0);
+    }
+
+    @Test
+    public void testInvalidationOnNewReaderVersion() {
+        QueryResultCache cache = new QueryResultCache(1024 * 1024);
+        Query q = new TermQuery(new Term("contenuto", "dati"));
+        cache.put(1, q, 10, result("a.txt"));
+        assertNotNull(cache.get(1, q, 10));
+        assertNull(cache.get(1, q, 20));
+
+        // un reader più recente svuota la cache, i risultati del vecchio reader vengono ignorati
+        assertNull(cache.get(2, q, 10));
+        cache.put(1, q, 10, result("a.txt"));
+        assertNull(cache.get(2, q, 10));
+        assertEquals(1, cache.getStats().hits);
+        assertEquals(3, cache.getStats().misses);
+    }
+
+    @Test
+    public void testLruEviction() {
+        QueryResultCache cache = new QueryResultCache(2000);
+        for (int i = 0; i < 100; i++) {
+            cache.put(1, new TermQuery(new Term("contenuto", "t" + i)), 10, result("file" + i + ".txt"));
+        }
+        QueryResultCache.Stats stats = cache.getStats();
+        assertEquals(100, stats.size + stats.evictions);
+        assertNotNull(cache.get(1, new TermQuery(new Term("contenuto", "t99")), 10));
+        assertNull(cache.get(1, new TermQuery(new Term("contenuto", "t0")), 10));
+    }
+}
@@ -0,0 +1,553 @@
+package lucenex;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for SearchService and SearchServer
+ */
+public class SearchServiceTest {
+
+    @Test
+    public void testSearchSeesNewCommits() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Files.write(docs.resolve("first.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIncremental(true));
+        indexer.indexFileOrDirectory(docs.toString());
+
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString()))) {
+            assertEquals(1, service.search("scientist").totalHits);
+            assertTrue(service.search("scientist").cached);
+
+            Files.write(docs.resolve("second.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+            indexer.indexFileOrDirectory(docs.toString());
+            service.maybeRefresh();
+            SearchResult afterCommit = service.search("scientist");
+            assertEquals(2, afterCommit.totalHits);
+            assertFalse(afterCommit.cached);
+        } finally {
+            indexer.closeIndex();
+        }
+    }
+
+    @Test
+    public void testQueryLogWarmsEveryNewSearcher() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Path queryLog = Files.createTempDirectory("log").resolve("queries.log");
+        Files.write(docs.resolve("first.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIncremental(true));
+        indexer.indexFileOrDirectory(docs.toString());
+
+        SearchOptions options = new SearchOptions().setIndexDir(index.toString()).setQueryLog(queryLog.toString());
+        try (SearchService service = new SearchService(options)) {
+            assertEquals(0, service.getNumWarmQueries());
+            service.search("scientist");
+            service.search("data");
+            service.search("scientist");
+            try {
+                service.search("(((");
+                fail("query non valida accettata");
+            } catch (ParseException e) {
+                // le query non valide non vengono registrate
+            }
+        }
+        assertEquals(Arrays.asList("data", "scientist"), QueryLog.recent(queryLog, 10));
+
+        options.setPreload(new HashSet<>(Arrays.asList("tim", "doc", "cfs"))).setWarmQueries(1);
+        try (SearchService service = new SearchService(options)) {
+            assertEquals(1, service.getNumWarmQueries());
+            assertEquals(1, service.getMetrics().counter("warm.queries").sum());
+            assertTrue(service.getReadyNanos() > 0);
+
+            // anche il searcher riaperto dopo un commit viene riscaldato prima di essere usato
+            Files.write(docs.resolve("second.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+            indexer.indexFileOrDirectory(docs.toString());
+            service.maybeRefresh();
+            assertEquals(2, service.getMetrics().counter("warm.queries").sum());
+            assertEquals(2, service.search("scientist").totalHits);
+        } finally {
+            indexer.closeIndex();
+        }
+    }
+
+    @Test
+    public void testQueryLogIsTruncatedToTheTailReadAtStartup() throws Exception {
+        Path file = Files.createTempDirectory("log").resolve("queries.log");
+        try (QueryLog log = new QueryLog(file)) {
+            // oltre MAX_BYTES in tutto
+            for (int i = 0; i < QueryLog.MAX_BYTES / 10; i++) {
+                log.record("recent " + i);
+            }
+            log.flush();
+            assertTrue(Files.size(file) <= QueryLog.MAX_TAIL_BYTES);
+            log.record("last");
+            log.flush();
+        }
+        List<String> recent = QueryLog.recent(file, 2);
+        assertEquals(Arrays.asList("recent " + (QueryLog.MAX_BYTES / 10 - 1), "last"), recent);
+        // le righe lette sono tutte complete
+        for (String line : QueryLog.recent(file, Integer.MAX_VALUE)) {
+            assertTrue(line, line.startsWith("recent ") || line.equals("last"));
+        }
+    }
+
+    @Test
+    public void testServer() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Files.write(docs.resolve("first.txt"), "ingegneria dei dati".getBytes(StandardCharsets.UTF_8));
+        TextFileIndexer indexer = new TextFileIndexer(index.toString());
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        SearchOptions options = new SearchOptions().setIndexDir(index.toString());
+        try (SearchService service = new SearchService(options);
+             SearchServer server = new SearchServer(service, options)) {
+            String body = get(server, "ingegneria");
+            assertTrue(body, body.startsWith("hits\t1\t"));
+            assertTrue(body, body.contains("first.txt"));
+
+            HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + server.getPort()
+                    + "/search").openConnection();
+            assertEquals(400, conn.getResponseCode());
+        }
+    }
+
+    @Test
+    public void testSlicedSearchMatchesSequential() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIncremental(true));
+        // ogni commit crea almeno un nuovo segmento
+        for (int segment = 0; segment < 4; segment++) {
+            for (int i = 0; i < 10; i++) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 0; j <= (segment * 10 + i) % 7; j++) {
+                    text.append("data scientist ");
+                }
+                Files.write(docs.resolve("file" + segment + "_" + i + ".txt"),
+                        text.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            indexer.indexFileOrDirectory(docs.toString());
+        }
+        indexer.closeIndex();
+
+        SearchOptions sequential = new SearchOptions().setIndexDir(index.toString()).setCacheRamBytes(0);
+        SearchOptions sliced = new SearchOptions().setIndexDir(index.toString()).setCacheRamBytes(0)
+                .setSliceThreads(2).setSliceMaxSegments(1);
+        try (SearchService expected = new SearchService(sequential);
+             SearchService actual = new SearchService(sliced)) {
+            SearchResult a = expected.search("scientist");
+            SearchResult b = actual.search("scientist");
+            assertEquals(a.totalHits, b.totalHits);
+            assertEquals(a.hits.size(), b.hits.size());
+            for (int i = 0; i < a.hits.size(); i++) {
+                assertEquals(a.hits.get(i).score, b.hits.get(i).score, 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testRebuildWithFewerShardsDropsOldShards() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        for (int i = 0; i < 20; i++) {
+            Files.write(docs.resolve("file" + i + ".txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+        }
+        for (int numShards : new int[]{4, 2, 1, 3}) {
+            TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                    .setNumShards(numShards));
+            indexer.indexFileOrDirectory(docs.toString());
+            indexer.closeIndex();
+            try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                    .setCacheRamBytes(0))) {
+                assertEquals(numShards == 1 ? 0 : numShards, service.getNumShards());
+                assertEquals(20, service.search("scientist").totalHits);
+            }
+        }
+        assertFalse(Files.exists(index.resolve("shard3")));
+
+        // un aggiornamento incrementale non può cambiare il numero di shard
+        for (int numShards : new int[]{1, 2}) {
+            try {
+                new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString()).setNumShards(numShards)
+                        .setIncremental(true));
+                fail("numero di shard cambiato in un aggiornamento incrementale");
+            } catch (IllegalArgumentException e) {
+                // atteso
+            }
+        }
+    }
+
+    @Test
+    public void testShardedSearchMatchesSingleIndex() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path single = Files.createTempDirectory("index");
+        Path sharded = Files.createTempDirectory("index");
+        for (int i = 0; i < 40; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j <= i % 7; j++) {
+                text.append(j % 2 == 0 ? "data scientist " : "ingegneria ");
+            }
+            Files.write(docs.resolve("file" + i + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(single.toString()));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(sharded.toString()).setNumShards(3));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (SearchService expected = new SearchService(new SearchOptions().setIndexDir(single.toString())
+                .setCacheRamBytes(0).setTopK(100));
+             SearchService actual = new SearchService(new SearchOptions().setIndexDir(sharded.toString())
+                     .setCacheRamBytes(0).setTopK(100))) {
+            assertEquals(0, expected.getNumShards());
+            assertEquals(3, actual.getNumShards());
+            // con statistiche globali gli score non dipendono dallo shard in cui si trova il documento
+            SearchResult a = expected.search("scientist ingegneria");
+            SearchResult b = actual.search("scientist ingegneria");
+            assertEquals(40, b.totalHits);
+            Map<String, Float> scores = new HashMap<>();
+            for (SearchResult.Hit hit : a.hits) {
+                scores.put(hit.path, hit.score);
+            }
+            for (SearchResult.Hit hit : b.hits) {
+                assertEquals(scores.get(hit.path), hit.score, 0f);
+            }
+        }
+
+        // l'aggiornamento incrementale trova e rimuove i file nel loro shard
+        Files.delete(docs.resolve("file0.txt"));
+        indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(sharded.toString()).setNumShards(3)
+                .setIncremental(true));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(sharded.toString()))) {
+            assertEquals(39, service.search("scientist").totalHits);
+        }
+    }
+
+    @Test
+    public void testSuggestFileNames() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Path other = Files.createDirectories(docs.resolve("other"));
+        for (Path file : new Path[]{docs.resolve("data_scientist.txt"), other.resolve("data_scientist.txt"),
+                docs.resolve("data_engineer.txt"), docs.resolve("report.txt")}) {
+            Files.write(file, "contenuto".getBytes(StandardCharsets.UTF_8));
+        }
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIncremental(true));
+        indexer.indexFileOrDirectory(docs.toString());
+
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString()))) {
+            List<FileNameSuggester.Suggestion> suggestions = service.suggest("data");
+            assertEquals(2, suggestions.size());
+            // il nome presente in due cartelle viene proposto per primo
+            assertEquals("data_scientist.txt", suggestions.get(0).name);
+            assertEquals(2, suggestions.get(0).count);
+            assertEquals("data_engineer.txt", suggestions.get(1).name);
+
+            // il prefisso viene analizzato come il campo nome: "_" e spazio separano le parole
+            assertEquals(1, service.suggest("data sc").size());
+            assertTrue(service.suggest("zzz").isEmpty());
+
+            // il suggester viene ricostruito quando il searcher vede un nuovo commit
+            Files.write(docs.resolve("database.txt"), "contenuto".getBytes(StandardCharsets.UTF_8));
+            indexer.indexFileOrDirectory(docs.toString());
+            service.maybeRefresh();
+            assertEquals(3, service.suggest("data").size());
+        } finally {
+            indexer.closeIndex();
+        }
+    }
+
+    @Test
+    public void testSnippetsFromOffsets() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append("filler words without interest. ");
+        }
+        text.append("The data scientists\ttrained a model. ");
+        for (int i = 0; i < 50; i++) {
+            text.append("more filler words. ");
+        }
+        Files.write(docs.resolve("long.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setSnippets(true));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setSnippets(true).setSnippetBudgetMillis(0))) {
+            String snippet = service.search("scientist").hits.get(0).snippet;
+            // l'offset porta al termine originale, non a quello ridotto dallo stemmer
+            assertTrue(snippet, snippet.contains("data <b>scientists</b> trained"));
+            assertTrue(snippet.startsWith("...") && snippet.endsWith("..."));
+            assertTrue(snippet.length() < 250);
+        }
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString()))) {
+            assertEquals(null, service.search("scientist").hits.get(0).snippet);
+        }
+    }
+
+    @Test
+    public void testPassagesAreGroupedByFile() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("data scientist ").append(i).append('\n');
+        }
+        Files.write(docs.resolve("large.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 3; i++) {
+            Files.write(docs.resolve("small" + i + ".txt"), "scientist".getBytes(StandardCharsets.UTF_8));
+        }
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setSplitAboveBytes(500).setPassageChars(100).setSnippets(true));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setTopK(3).setSnippets(true).setSnippetBudgetMillis(0))) {
+            SearchResult result = service.search("scientist");
+            assertTrue(result.totalHits > 10);
+            assertEquals(3, result.hits.size());
+            Set<String> paths = new HashSet<>();
+            for (SearchResult.Hit hit : result.hits) {
+                assertTrue(hit.path, paths.add(hit.path));
+                assertTrue(hit.snippet, hit.snippet.contains("<b>scientist</b>"));
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicatesAreCollapsed() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        String text = TextFileIndexerTest.randomText(300, 1);
+        Files.write(docs.resolve("first.txt"), text.getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("copy.txt"), text.getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("near.txt"), text.replaceFirst("\\w+", "changed").getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("other.txt"), TextFileIndexerTest.randomText(300, 2).getBytes(StandardCharsets.UTF_8));
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setDedup(true));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString()))) {
+            SearchResult result = service.search("index");
+            assertEquals(2, result.hits.size());
+            Set<String> paths = new HashSet<>();
+            for (SearchResult.Hit hit : result.hits) {
+                paths.add(hit.path);
+                paths.addAll(hit.copies);
+            }
+            assertTrue(paths.contains(docs.resolve("first.txt").toString()));
+            assertTrue(paths.contains(docs.resolve("copy.txt").toString()));
+            assertTrue(paths.contains(docs.resolve("other.txt").toString()));
+        }
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setNearDuplicateBits(0))) {
+            assertEquals(3, service.search("index").hits.size());
+        }
+    }
+
+    @Test
+    public void testFacetsCountHitsPerDirectoryAndExtension() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Files.createDirectories(docs.resolve("a/deep"));
+        Files.createDirectories(docs.resolve("b"));
+        Files.write(docs.resolve("a/one.txt"), "dati".getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("a/deep/two.md"), "dati e indici".getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("a/deep/three.txt"), "dati".getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("b/four.html"), "<p>dati</p>".getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("b/five.txt"), "altro".getBytes(StandardCharsets.UTF_8));
+        TextFileIndexer indexer = new TextFileIndexer(index.toString());
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setTopK(1).setFacets(10))) {
+            SearchResult result = service.search("dati");
+            assertEquals(1, result.hits.size());
+            FacetCounts facets = result.facets;
+            assertEquals(4, facets.getDocuments());
+            assertEquals(docs.toString(), facets.commonDirectory());
+            List<FacetCounts.Entry> subdirectories = facets.subdirectories(docs.toString(), 10);
+            assertEquals(2, subdirectories.size());
+            assertEquals(docs.resolve("a").toString(), subdirectories.get(0).value);
+            assertEquals(3, subdirectories.get(0).count);
+            assertEquals(1, subdirectories.get(1).count);
+            assertEquals(2, facets.count(TextFileIndexer.CARTELLA, docs.resolve("a/deep").toString()));
+            List<FacetCounts.Entry> extensions = facets.top(TextFileIndexer.ESTENSIONE, 10);
+            assertEquals("txt", extensions.get(0).value);
+            assertEquals(2, extensions.get(0).count);
+            assertEquals(3, extensions.size());
+
+            Query q = SearchService.drillDown(service.parse("dati"), docs.resolve("a/deep").toString(), null);
+            result = service.search(q);
+            assertEquals(2, result.totalHits);
+            assertEquals(docs.resolve("a/deep").toString(), result.facets.commonDirectory());
+            assertEquals(1, service.search(SearchService.drillDown(service.parse("dati"), null, "MD")).totalHits);
+        }
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString()))) {
+            assertEquals(null, service.search("dati").facets);
+        }
+    }
+
+    @Test
+    public void testSortedSearchTerminatesEarlyOnSortedIndex() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        for (int i = 0; i < 50; i++) {
+            Path file = docs.resolve("file" + (100 + i) + ".txt");
+            Files.write(file, "dati".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000_000_000L + (i * 7 % 50) * 1000L));
+        }
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIndexSort(SortMode.MTIME).setNumWorkers(1));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setTopK(3).setSort(SortMode.MTIME).setTotalHitsThreshold(3))) {
+            SearchResult result = service.search("dati");
+            assertEquals(3, result.hits.size());
+            // la raccolta si è fermata prima di contare tutti i 50 documenti
+            assertTrue(result.totalHitsIsLowerBound);
+            assertTrue(result.totalHits < 50);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(1_000_000_049_000L - i * 1000L,
+                        Files.getLastModifiedTime(Paths.get(result.hits.get(i).path)).toMillis());
+                assertTrue(Float.isNaN(result.hits.get(i).score));
+            }
+        }
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setTopK(3).setSort(SortMode.PATH).setTotalHitsThreshold(Integer.MAX_VALUE))) {
+            SearchResult result = service.search("dati");
+            assertEquals(50, result.totalHits);
+            assertFalse(result.totalHitsIsLowerBound);
+            assertEquals(docs.resolve("file100.txt").toString(), result.hits.get(0).path);
+            assertEquals(docs.resolve("file102.txt").toString(), result.hits.get(2).path);
+        }
+
+        // un indice esistente può essere ricreato con un ordine diverso
+        indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIndexSort(SortMode.PATH));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+    }
+
+    @Test
+    public void testBatchSearchWritesTrecRun() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Files.write(docs.resolve("first.txt"), "ingegneria dei dati".getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("second.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+        TextFileIndexer indexer = new TextFileIndexer(index.toString());
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        Path queries = Files.createTempFile("queries", ".txt");
+        Files.write(queries, "q1\tingegneria\nq2\tscientist OR dati\nq3\t(((\n".getBytes(StandardCharsets.UTF_8));
+
+        StringWriter out = new StringWriter();
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setSimilarity(SimilarityMode.CLASSIC))) {
+            BatchSearch.Summary summary = BatchSearch.run(service, queries.toString(), 2, "test", new PrintWriter(out));
+            assertEquals(2, summary.queries);
+            assertEquals(1, summary.errors);
+        }
+        String[] lines = out.toString().trim().split("\n");
+        assertEquals(3, lines.length);
+        for (String line : lines) {
+            String[] fields = line.split(" ");
+            assertEquals(6, fields.length);
+            assertEquals("Q0", fields[1]);
+            assertEquals("test", fields[5]);
+        }
+    }
+
+    @Test
+    public void testBatchSearchWritesDecreasingScoresWhenSortedByMtime() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        for (int i = 0; i < 3; i++) {
+            Path file = docs.resolve("doc" + i + ".txt");
+            Files.write(file, "ingegneria dei dati".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000L * (i + 1)));
+        }
+        TextFileIndexer indexer = new TextFileIndexer(index.toString());
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        Path queries = Files.createTempFile("queries", ".txt");
+        Files.write(queries, "q1\tingegneria\n".getBytes(StandardCharsets.UTF_8));
+
+        StringWriter out = new StringWriter();
+        try (SearchService service = new SearchService(new SearchOptions().setIndexDir(index.toString())
+                .setSort(SortMode.MTIME))) {
+            BatchSearch.run(service, queries.toString(), 1, "test", new PrintWriter(out));
+        }
+        String[] lines = out.toString().trim().split("\n");
+        assertEquals(3, lines.length);
+        double previous = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < lines.length; i++) {
+            String[] fields = lines[i].split(" ");
+            // trec_eval ordina per score: deve scendere con il rank, nell'ordine della ricerca
+            assertTrue(fields[2].endsWith("doc" + (2 - i) + ".txt"));
+            double score = Double.parseDouble(fields[4]);
+            assertFalse(Double.isNaN(score));
+            assertTrue(score < previous);
+            previous = score;
+        }
+    }
+
+    private static String get(SearchServer server, String q) throws Exception {
+        URL url = new URL("http://localhost:" + server.getPort() + "/search?q=" + URLEncoder.encode(q, "UTF-8"));
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        assertEquals(200, conn.getResponseCode());
+        try (InputStream in = conn.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package lucenex;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldExistsQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for TextFileIndexer
+ */
+public class TextFileIndexerTest {
+
+    @Test
+    public void testParallelIndexing() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        for (int i = 0; i < 50; i++) {
+            Path dir = Files.createDirectories(docs.resolve("d" + (i % 5)));
+            Files.write(dir.resolve("file" + i + ".txt"), ("data scientist " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(docs.resolve("ignored.csv"), "data".getBytes(StandardCharsets.UTF_8));
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions()
+                .setIndexDir(index.toString())
+                .setNumWorkers(4)
+                .setQueueCapacity(2));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            assertEquals(50, reader.numDocs());
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(50, searcher.count(new TermQuery(new Term("contenuto", "scientist"))));
+        }
+    }
+
+    @Test
+    public void testIncrementalIndexing() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Path unchanged = Files.write(docs.resolve("unchanged.txt"), "ingegneria".getBytes(StandardCharsets.UTF_8));
+        Path changed = Files.write(docs.resolve("changed.txt"), "dati".getBytes(StandardCharsets.UTF_8));
+        Path removed = Files.write(docs.resolve("removed.txt"), "scientist".getBytes(StandardCharsets.UTF_8));
+
+        IndexerOptions options = new IndexerOptions().setIndexDir(index.toString()).setIncremental(true);
+        TextFileIndexer indexer = new TextFileIndexer(options);
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        Files.write(changed, "engineer".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 1000));
+        Files.delete(removed);
+        Files.write(docs.resolve("added.txt"), "lucene".getBytes(StandardCharsets.UTF_8));
+
+        indexer = new TextFileIndexer(options);
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(3, reader.numDocs());
+            assertEquals(1, searcher.count(new TermQuery(new Term("path", unchanged.toString()))));
+            assertEquals(0, searcher.count(new TermQuery(new Term("path", removed.toString()))));
+            assertEquals(0, searcher.count(new TermQuery(new Term("contenuto", "dati"))));
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "engin"))));
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "lucen"))));
+        }
+    }
+
+    @Test
+    public void testBulkLoadCommitsEveryNDocuments() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        for (int i = 0; i < 30; i++) {
+            Files.write(docs.resolve("file" + i + ".txt"), ("data scientist " + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions()
+                .setIndexDir(index.toString())
+                .setNumWorkers(1)
+                .setProfile(WriterProfile.BULK_LOAD)
+                .setCommitDocs(10)
+                .setCommitSeconds(0)
+                .setForceMergeSegments(1));
+        indexer.indexFileOrDirectory(docs.toString());
+        // nessun commit alla fine della cartella, solo quelli ogni 10 documenti
+        assertEquals(3, indexer.getMetrics().histogram("commit").getCount());
+        indexer.closeIndex();
+
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            assertEquals(30, reader.numDocs());
+            assertEquals(1, reader.leaves().size());
+        }
+    }
+
+    @Test
+    public void testWatchedChangesAreVisibleBeforeCommit() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Path sub = Files.createDirectories(docs.resolve("sub"));
+        Files.write(docs.resolve("old.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+        Files.write(sub.resolve("nested.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIncremental(true).setCommitDocs(0).setCommitSeconds(0));
+        indexer.indexFileOrDirectory(docs.toString());
+        try (DirectoryWatcher watcher = new DirectoryWatcher(Collections.singletonList(docs), 50);
+             SearchService service = new SearchService(new SearchOptions().setCacheRamBytes(0),
+                     indexer.newSearcherManager())) {
+            assertEquals(2, service.search("scientist").totalHits);
+
+            Files.write(docs.resolve("new.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+            Files.delete(docs.resolve("old.txt"));
+            Files.delete(sub.resolve("nested.txt"));
+            Files.delete(sub);
+
+            // gli eventi arrivano a gruppi, si raccolgono finché non compaiono tutte le modifiche
+            Set<Path> changed = new HashSet<>();
+            Set<Path> deleted = new HashSet<>();
+            while (!changed.contains(docs.resolve("new.txt")) || !deleted.contains(sub)) {
+                DirectoryWatcher.Batch batch = watcher.next();
+                changed.removeAll(batch.deleted);
+                deleted.removeAll(batch.changed);
+                changed.addAll(batch.changed);
+                deleted.addAll(batch.deleted);
+            }
+            assertTrue(deleted.contains(docs.resolve("old.txt")));
+            indexer.applyChanges(changed, deleted);
+
+            // nessun commit: le modifiche sono visibili dal reader near-real-time
+            service.maybeRefresh();
+            SearchResult result = service.search("scientist");
+            assertEquals(1, result.totalHits);
+            assertEquals(docs.resolve("new.txt").toString(), result.hits.get(0).path);
+        } finally {
+            indexer.closeIndex();
+        }
+    }
+
+    @Test
+    public void testWatchedChangeThatFailsDoesNotStopTheOthers() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Path bad = Files.write(docs.resolve("bad.bin"), "data".getBytes(StandardCharsets.UTF_8));
+        Path good = Files.write(docs.resolve("good.txt"), "data scientist".getBytes(StandardCharsets.UTF_8));
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setIncremental(true).setExtractor("bin", in -> {
+                    throw new IllegalStateException("formato non supportato");
+                }));
+        indexer.applyChanges(Arrays.asList(bad, good), Collections.emptyList());
+        indexer.closeIndex();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            assertEquals(1, reader.numDocs());
+            assertEquals(1, new IndexSearcher(reader).count(new TermQuery(new Term("path", good.toString()))));
+        }
+    }
+
+    @Test
+    public void testLargeFilesAreSplitIntoPassages() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("line ").append(i).append(" of a long log\n");
+        }
+        text.append("caff\u00e8 scientist\n");
+        Path large = Files.write(docs.resolve("large.txt"), text.toString().getBytes(StandardCharsets.ISO_8859_1));
+        Files.write(docs.resolve("small.txt"), "scientist".getBytes(StandardCharsets.UTF_8));
+
+        IndexerOptions options = new IndexerOptions().setIndexDir(index.toString()).setIncremental(true)
+                .setSplitAboveBytes(1000).setPassageChars(500);
+        TextFileIndexer indexer = new TextFileIndexer(options);
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        int passages;
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            passages = searcher.count(new TermQuery(new Term("path", large.toString())));
+            assertTrue(passages > 8);
+            assertEquals(passages + 1, reader.numDocs());
+            // il file non è UTF-8 valido, quindi viene letto come windows-1252
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "caff\u00e8"))));
+            assertEquals(2, searcher.count(new TermQuery(new Term("contenuto", "scientist"))));
+            // il nome è solo nel primo passaggio
+            assertEquals(1, searcher.count(new TermQuery(new Term("nome", "large"))));
+        }
+
+        // l'aggiornamento sostituisce tutti i passaggi del file
+        Files.write(large, text.substring(0, 1500).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(large, FileTime.fromMillis(Files.getLastModifiedTime(large).toMillis() + 1000));
+        indexer = new TextFileIndexer(options);
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            int updated = searcher.count(new TermQuery(new Term("path", large.toString())));
+            assertTrue(updated > 1 && updated < passages);
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "scientist"))));
+        }
+    }
+
+    @Test
+    public void testSnippetsKeepTheLastWord() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        // senza spazio né a capo finale, e con un carattere di due byte
+        Files.write(docs.resolve("ascii.txt"), "The data scientists trained a model.".getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("accent.txt"), "caff\u00e8 e modello".getBytes(StandardCharsets.UTF_8));
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setSnippets(true));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "model"))));
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "modello"))));
+            int doc = searcher.search(new TermQuery(new Term("contenuto", "model")), 1).scoreDocs[0].doc;
+            assertEquals("The data scientists trained a model.", reader.document(doc).get("contenuto"));
+        }
+    }
+
+    @Test
+    public void testSnippetsSplitFilesAboveTheStoredLimit() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        String text = randomText(1000, 4);
+        StringBuilder large = new StringBuilder();
+        while (large.length() <= TextFileIndexer.MAX_SNIPPET_DOC_BYTES) {
+            large.append(text);
+        }
+        Path file = Files.write(docs.resolve("large.txt"), large.toString().getBytes(StandardCharsets.UTF_8));
+
+        // anche senza divisione in passaggi, con gli snippet il contenuto memorizzato di un documento è limitato
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setSnippets(true).setSplitAboveBytes(0).setPassageChars(1024 * 1024));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            assertTrue(new IndexSearcher(reader).count(new TermQuery(new Term("path", file.toString()))) > 1);
+        }
+    }
+
+    @Test
+    public void testMarkupIsStrippedPerExtension() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Files.write(docs.resolve("page.html"), ("<html><head><script>var hidden = 1;</script></head>"
+                + "<body><p class=\"intro\">caff&egrave; lucene</p></body></html>").getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("dump.xml"), "<record id=\"7\"><title>lucene</title></record>"
+                .getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("notes.md"), "# Notes\nsee [lucene](http://example.com/hidden) <b>docs</b>\n"
+                .getBytes(StandardCharsets.UTF_8));
+        Files.write(docs.resolve("data.csv"), "lucene".getBytes(StandardCharsets.UTF_8));
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setNumWorkers(2));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(3, reader.numDocs());
+            assertEquals(3, searcher.count(new TermQuery(new Term("contenuto", "lucen"))));
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "caff\u00e8"))));
+            for (String markup : new String[]{"hidden", "script", "p", "class", "intro", "record", "id", "titl", "b", "http"}) {
+                assertEquals(markup, 0, searcher.count(new TermQuery(new Term("contenuto", markup))));
+            }
+        }
+
+        // con una sola estensione gli altri formati vengono ignorati
+        indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString())
+                .setExtensions(Collections.singletonList("md")));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            assertEquals(1, reader.numDocs());
+        }
+    }
+
+    @Test
+    public void testExactDuplicatesAreIndexedOnce() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        String text = randomText(300, 1);
+        Path first = Files.write(docs.resolve("first.txt"), text.getBytes(StandardCharsets.UTF_8));
+        Path copy = Files.write(Files.createDirectories(docs.resolve("sub")).resolve("copy.txt"),
+                text.getBytes(StandardCharsets.UTF_8));
+        Path near = Files.write(docs.resolve("near.txt"), text.replaceFirst("\\w+", "changed")
+                .getBytes(StandardCharsets.UTF_8));
+
+        IndexerOptions options = new IndexerOptions().setIndexDir(index.toString()).setIncremental(true)
+                .setDedup(true);
+        TextFileIndexer indexer = new TextFileIndexer(options);
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        Path indexed;
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(3, reader.numDocs());
+            // il contenuto comune è indicizzato due volte: una copia esatta e un quasi duplicato
+            assertEquals(2, searcher.count(new TermQuery(new Term("contenuto", "index"))));
+            assertEquals(1, searcher.count(new TermQuery(new Term("contenuto", "chang"))));
+            assertEquals(2, searcher.count(new FieldExistsQuery(TextFileIndexer.SIMHASH)));
+            assertEquals(1, searcher.count(new FieldExistsQuery(TextFileIndexer.DUPLICATO)));
+            indexed = FileState.lookup(reader, new Term("path", first.toString())).duplicate ? copy : first;
+            // l'hash calcolato nella stessa lettura della firma è quello del file
+            assertEquals(FileState.hash(first), FileState.lookup(reader, new Term("path", first.toString())).hash);
+            long a = simHash(reader, indexed);
+            long b = simHash(reader, near);
+            assertTrue(a != 0 && b != 0);
+            assertTrue(SimHash.distance(a, b) <= 3);
+        }
+
+        // rimosso il file indicizzato con il contenuto, la copia rimasta viene indicizzata al suo posto
+        Files.delete(indexed);
+        indexer = new TextFileIndexer(options);
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(2, reader.numDocs());
+            assertEquals(0, searcher.count(new FieldExistsQuery(TextFileIndexer.DUPLICATO)));
+            assertEquals(2, searcher.count(new FieldExistsQuery(TextFileIndexer.SIMHASH)));
+        }
+    }
+
+    @Test
+    public void testHashIsComputedWhileReadingText() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        // BOM e contenuto oltre il campione letto per riconoscere la codifica
+        byte[] text = ("\ufeff" + randomText(30000, 2)).getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(docs.resolve("bom.txt"), text);
+
+        FileState.Hasher hasher = new FileState.Hasher();
+        try (Reader reader = PassageReader.open(file, null, hasher)) {
+            char[] start = new char[10];
+            assertEquals(10, reader.read(start));
+            assertEquals(randomText(30000, 2).substring(0, 10), new String(start));
+            // i byte non letti vengono aggiunti all'hash da hash()
+            assertEquals(FileState.hash(file), hasher.hash());
+        }
+    }
+
+    @Test
+    public void testHashIsStoredOnlyForIncrementalIndexes() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        Path file = Files.write(docs.resolve("notes.txt"), ("\ufeff" + randomText(200, 3))
+                .getBytes(StandardCharsets.UTF_8));
+
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(index.toString()));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            assertEquals(1, reader.numDocs());
+            assertEquals(0, new IndexSearcher(reader).count(new FieldExistsQuery("hash")));
+        }
+
+        // con gli snippet l'hash viene calcolato nella stessa lettura del contenuto
+        Path incremental = Files.createTempDirectory("index");
+        indexer = new TextFileIndexer(new IndexerOptions().setIndexDir(incremental.toString()).setIncremental(true)
+                .setSnippets(true));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(incremental))) {
+            assertEquals(1, reader.numDocs());
+            assertEquals(FileState.hash(file), FileState.lookup(reader, new Term("path", file.toString())).hash);
+        }
+    }
+
+    @Test
+    public void testDocValuesFetcherReadsTheStoredPaths() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        Path index = Files.createTempDirectory("index");
+        for (int i = 0; i < 30; i++) {
+            Path dir = Files.createDirectories(docs.resolve("d" + (i % 3)));
+            Files.write(dir.resolve("file " + i + ".txt"), ("data scientist " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions()
+                .setIndexDir(index.toString())
+                .setNumWorkers(4));
+        indexer.indexFileOrDirectory(docs.toString());
+        indexer.closeIndex();
+
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+            assertFetchesStoredPaths(reader);
+        }
+
+        // segmenti scritti senza i DocValues del path: i valori vengono letti dai campi memorizzati
+        Path old = Files.createTempDirectory("index");
+        try (IndexWriter writer = new IndexWriter(FSDirectory.open(old), new IndexWriterConfig())) {
+            for (int i = 0; i < 10; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("path", docs.resolve("file " + i + ".txt").toString(), Field.Store.YES));
+                writer.addDocument(doc);
+                if (i % 4 == 3) {
+                    writer.flush();
+                }
+            }
+        }
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(old))) {
+            assertEquals(10, reader.numDocs());
+            assertFetchesStoredPaths(reader);
+        }
+    }
+
+    private static void assertFetchesStoredPaths(IndexReader reader) throws Exception {
+        ScoreDoc[] hits = new IndexSearcher(reader).search(new MatchAllDocsQuery(), reader.maxDoc()).scoreDocs;
+        // in ordine qualsiasi, come i risultati ordinati per score
+        Collections.shuffle(Arrays.asList(hits), new Random(42));
+        String[] paths = new DocValuesFetcher("path").fetch(reader, hits);
+        assertEquals(hits.length, paths.length);
+        for (int i = 0; i < hits.length; i++) {
+            assertEquals(reader.document(hits[i].doc).get("path"), paths[i]);
+        }
+    }
+
+    @Test
+    public void testEveryCodecWritesAReadableIndex() throws Exception {
+        Path docs = Files.createTempDirectory("docs");
+        for (int i = 0; i < 5; i++) {
+            Files.write(docs.resolve("file" + i + ".txt"), ("data scientist " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        for (CodecMode codec : CodecMode.values()) {
+            Path index = Files.createTempDirectory("index");
+            TextFileIndexer indexer = new TextFileIndexer(new IndexerOptions()
+                    .setIndexDir(index.toString())
+                    .setCodec(codec));
+            indexer.indexFileOrDirectory(docs.toString());
+            indexer.closeIndex();
+
+            try (FSDirectory dir = FSDirectory.open(index);
+                 IndexReader reader = DirectoryReader.open(dir)) {
+                for (SegmentCommitInfo info : SegmentInfos.readLatestCommit(dir)) {
+                    assertEquals(codec.name(), codec.newCodec().getName(), info.info.getCodec().getName());
+                }
+                assertEquals(codec.name(), 5, reader.numDocs());
+                IndexSearcher searcher = new IndexSearcher(reader);
+                TopDocs hits = searcher.search(new TermQuery(new Term("contenuto", "scientist")), 10);
+                assertEquals(codec.name(), 5, hits.scoreDocs.length);
+                Set<String> paths = new HashSet<>();
+                for (ScoreDoc hit : hits.scoreDocs) {
+                    paths.add(reader.document(hit.doc).get("path"));
+                }
+                assertTrue(codec.name(), paths.contains(docs.resolve("file3.txt").toString()));
+            }
+        }
+    }
+
+    private static long simHash(IndexReader reader, Path file) throws Exception {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        int doc = searcher.search(new TermQuery(new Term("path", file.toString())), 1).scoreDocs[0].doc;
+        LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(doc, reader.leaves()));
+        NumericDocValues values = DocValues.getNumeric(leaf.reader(), TextFileIndexer.SIMHASH);
+        return values.advanceExact(doc - leaf.docBase) ? values.longValue() : 0;
+    }
+
+    static String randomText(int words, long seed) {
+        String[] vocabulary = {"data", "index", "query", "segment", "merge", "token", "field", "score", "reader",
+                "writer", "shard", "commit", "flush", "term", "posting", "vector", "codec", "filter", "cache", "slice"};
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(vocabulary[random.nextInt(vocabulary.length)]).append(i % 12 == 11 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+}